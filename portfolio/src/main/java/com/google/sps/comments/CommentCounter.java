@@ -0,0 +1,201 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comments;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.sps.metrics.Metrics;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Per-project comment counts and latest comment times, kept up to date as comments are posted and deleted.
+ * 
+ * Each project's count is split over several shard entities, and each new comment updates a random one,
+ * so a busy project doesn't serialize its posts on a single entity's write rate.
+ * Reading every project's summary is one query over all shards.
+ */
+public final class CommentCounter {
+  private static final String KIND = "CommentCounterShard";
+  /** Shards per project. More shards allow more concurrent posts, at the cost of a slightly bigger read. */
+  private static final int SHARD_COUNT = 20;
+  /** Attempts at a shard update before giving up on a contended transaction. */
+  private static final int MAX_ATTEMPTS = 3;
+
+  /** A project's comment count, and when it was last commented on. */
+  public static final class Summary {
+    private final long count;
+    /** ms since Epoch, or null if there are no comments. */
+    private final Long lastCommentAt;
+
+    private Summary(long count, Long lastCommentAt) {
+      this.count = count;
+      this.lastCommentAt = lastCommentAt;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public Long getLastCommentAt() {
+      return lastCommentAt;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Summary)) {
+        return false;
+      }
+      Summary otherSummary = (Summary) other;
+      return count == otherSummary.count && Objects.equals(lastCommentAt, otherSummary.lastCommentAt);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(count, lastCommentAt);
+    }
+  }
+
+  private CommentCounter() {}
+
+  /** Count a newly posted comment. */
+  public static void increment(String projectId, long timestamp) {
+    increment(projectId, 1, timestamp);
+  }
+
+  /** 
+   * Count several new comments on one project, with one shard update.
+   * @param lastCommentAt the newest of their timestamps.
+   */
+  public static void increment(String projectId, long count, long lastCommentAt) {
+    try (Metrics.Timer timer = Metrics.DATASTORE.time("increment_counter")) {
+      increment(projectId, count, lastCommentAt, ThreadLocalRandom.current().nextInt(SHARD_COUNT));
+    }
+  }
+
+  private static void increment(String projectId, long count, long timestamp, int shardIndex) {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Key shardKey = getShardKey(projectId, shardIndex);
+
+    for (int attempt = 1; ; attempt++) {
+      Transaction transaction = datastore.beginTransaction();
+      try {
+        Entity shard;
+        try {
+          shard = datastore.get(transaction, shardKey);
+        } catch (EntityNotFoundException expectedForFirstComment) {
+          shard = newShard(shardKey, projectId);
+        }
+        shard.setUnindexedProperty("count", (long) shard.getProperty("count") + count);
+        shard.setUnindexedProperty("lastCommentAt", Math.max((long) shard.getProperty("lastCommentAt"), timestamp));
+        datastore.put(transaction, shard);
+        transaction.commit();
+        return;
+      } catch (ConcurrentModificationException contended) {
+        if (attempt == MAX_ATTEMPTS) {
+          throw contended;
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+  }
+
+  /** Forget a project's counts, after all its comments are deleted. */
+  public static void reset(String projectId) {
+    ArrayList<Key> shardKeys = new ArrayList<Key>(SHARD_COUNT);
+    for (int shard = 0; shard < SHARD_COUNT; shard++) {
+      shardKeys.add(getShardKey(projectId, shard));
+    }
+    DatastoreServiceFactory.getDatastoreService().delete(shardKeys);
+  }
+
+  /** 
+   * Recount a project from its comments, replacing its shards.
+   * For backfilling projects whose comments predate the counter.
+   */
+  public static void recount(String projectId) {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Query commentsQuery = new Query("Comment")
+                            .setKeysOnly()
+                            .addFilter("projectId", Query.FilterOperator.EQUAL, projectId);
+    long count = 0;
+    for (Entity ignored : datastore.prepare(commentsQuery).asIterable(FetchOptions.Builder.withChunkSize(500))) {
+      count++;
+    }
+
+    Query latestQuery = new Query("Comment")
+                          .addSort("timestamp", Query.SortDirection.DESCENDING)
+                          .addFilter("projectId", Query.FilterOperator.EQUAL, projectId);
+    long lastCommentAt = 0;
+    for (Entity latest : datastore.prepare(latestQuery).asIterable(FetchOptions.Builder.withLimit(1))) {
+      lastCommentAt = (long) latest.getProperty("timestamp");
+    }
+
+    reset(projectId);
+    if (count > 0) {
+      Entity shard = newShard(getShardKey(projectId, 0), projectId);
+      shard.setUnindexedProperty("count", count);
+      shard.setUnindexedProperty("lastCommentAt", lastCommentAt);
+      datastore.put(shard);
+    }
+  }
+
+  /** Get every project's summary, by projectId, with one query. Projects without comments are absent. */
+  public static Map<String, Summary> getAll() {
+    HashMap<String, long[]> totals = new HashMap<String, long[]>();
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    try (Metrics.Timer timer = Metrics.DATASTORE.time("comment_counters")) {
+      for (Entity shard : datastore.prepare(new Query(KIND)).asIterable(FetchOptions.Builder.withChunkSize(500))) {
+        long[] total = totals.computeIfAbsent((String) shard.getProperty("projectId"), projectId -> new long[2]);
+        total[0] += (long) shard.getProperty("count");
+        total[1] = Math.max(total[1], (long) shard.getProperty("lastCommentAt"));
+      }
+    }
+
+    HashMap<String, Summary> summaries = new HashMap<String, Summary>();
+    for (Map.Entry<String, long[]> total : totals.entrySet()) {
+      if (total.getValue()[0] > 0) {
+        summaries.put(total.getKey(), new Summary(total.getValue()[0], total.getValue()[1]));
+      }
+    }
+    return summaries;
+  }
+
+  private static Entity newShard(Key shardKey, String projectId) {
+    Entity shard = new Entity(shardKey);
+    shard.setProperty("projectId", projectId);
+    shard.setUnindexedProperty("count", 0L);
+    shard.setUnindexedProperty("lastCommentAt", 0L);
+    return shard;
+  }
+
+  private static Key getShardKey(String projectId, int shard) {
+    return KeyFactory.createKey(KIND, projectId + "#" + shard);
+  }
+}
@@ -0,0 +1,106 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comments;
+
+import com.google.sps.data.Comment;
+import com.google.sps.json.Json;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.servlet.ServletContext;
+
+/**
+ * In-process publish/subscribe of newly posted comments, for answering open project pages' polls.
+ * Subscribers are grouped by project and language, so a new comment is translated and serialized
+ * once per language being watched, then the same JSON is handed to every subscriber of that language.
+ * Only reaches subscribers on this instance.
+ */
+public final class CommentHub {
+  /** The ServletContext attribute the shared hub is stored under. */
+  private static final String ATTRIBUTE = CommentHub.class.getName();
+
+  /** Something waiting for new comments. */
+  public interface Subscriber {
+    /**
+     * Send one comment, along with its JSON as in /comments. Must not block, since it is called on the publishing
+     * thread. A subscriber that can no longer be sent to, or wants no more comments, should unsubscribe itself.
+     */
+    void send(Comment comment, String commentJson);
+  }
+
+  /** Subscribers by projectId, then by languageCode. */
+  private final ConcurrentMap<String, ConcurrentMap<String, Set<Subscriber>>> subscribers =
+    new ConcurrentHashMap<String, ConcurrentMap<String, Set<Subscriber>>>();
+
+  /** Get the hub shared by every servlet in this context, creating it on first use. */
+  public static CommentHub get(ServletContext context) {
+    synchronized (context) {
+      CommentHub hub = (CommentHub) context.getAttribute(ATTRIBUTE);
+      if (hub == null) {
+        hub = new CommentHub();
+        context.setAttribute(ATTRIBUTE, hub);
+      }
+      return hub;
+    }
+  }
+
+  /** Start sending a project's new comments, in the given language, to a subscriber. */
+  public void subscribe(String projectId, String languageCode, Subscriber subscriber) {
+    /* Compute, so a concurrent unsubscribe can't remove the group between getting and adding to it. */
+    subscribers.compute(projectId, (project, languages) -> {
+      if (languages == null) {
+        languages = new ConcurrentHashMap<String, Set<Subscriber>>();
+      }
+      languages.computeIfAbsent(languageCode, language -> Collections.newSetFromMap(
+        new ConcurrentHashMap<Subscriber, Boolean>())).add(subscriber);
+      return languages;
+    });
+  }
+
+  /** Stop sending to a subscriber. Does nothing if it isn't subscribed. */
+  public void unsubscribe(String projectId, String languageCode, Subscriber subscriber) {
+    /* Drop empty groups, so projects nobody is watching cost nothing. */
+    subscribers.computeIfPresent(projectId, (project, languages) -> {
+      languages.computeIfPresent(languageCode, (language, languageSubscribers) -> {
+        languageSubscribers.remove(subscriber);
+        return languageSubscribers.isEmpty() ? null : languageSubscribers;
+      });
+      return languages.isEmpty() ? null : languages;
+    });
+  }
+
+  /** @return the languages a project's comments are currently watched in. Empty if nobody is watching. */
+  public Set<String> getLanguages(String projectId) {
+    ConcurrentMap<String, Set<Subscriber>> languages = subscribers.get(projectId);
+    return languages == null
+             ? Collections.<String>emptySet()
+             : Collections.unmodifiableSet(languages.keySet());
+  }
+
+  /** Send a comment, already translated into languageCode, to everyone watching its project in that language. */
+  public void publish(Comment comment, String languageCode) {
+    ConcurrentMap<String, Set<Subscriber>> languages = subscribers.get(comment.getProjectId());
+    Set<Subscriber> languageSubscribers = languages == null ? null : languages.get(languageCode);
+    if (languageSubscribers == null || languageSubscribers.isEmpty()) {
+      return;
+    }
+
+    String commentJson = Json.GSON.toJson(comment, Comment.class);
+    for (Subscriber subscriber : languageSubscribers) {
+      subscriber.send(comment, commentJson);
+    }
+  }
+}
@@ -0,0 +1,423 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.comments;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.KeyRange;
+import com.google.sps.json.Json;
+import com.google.sps.metrics.Metrics;
+import com.google.sps.translation.Translator;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletConfig;
+
+/**
+ * Write-behind buffer for new comments.
+ * 
+ * Comments are appended to a local log file and acknowledged straight away, then written to datastore
+ * in batches by a background thread. Keys are allocated up front, so a comment has its final id
+ * as soon as it is buffered and writing it more than once is harmless. On startup, anything left
+ * in the log (e.g. after a crash) is replayed. Reads should merge in getPending() so that
+ * users see their own comments before they are flushed.
+ * The rest of posting a comment happens in the flush too: detecting its language and counting it
+ * in CommentCounter, so posts wait on no RPCs besides the occasional id allocation.
+ * After every flush the log is rewritten to hold only what is still pending, so it stays as small as the buffer.
+ *
+ * The log is only as durable as the disk it is on, so its path must be given.
+ * This doesn't suit App Engine standard: its only writable disk is memory-backed /tmp, lost with the instance,
+ * and App Engine APIs can't be called from the flush thread. Write-behind is off by default for that reason,
+ * and is meant for runtimes with a persistent disk.
+ */
+public final class CommentWriteBuffer {
+  /** Init-param names, settable through web.xml or @WebServlet(initParams). */
+  public static final String ENABLED_PARAM = "comments.writeBehind";
+  public static final String LOG_PATH_PARAM = "comments.writeBehindLog";
+  public static final String FLUSH_INTERVAL_MS_PARAM = "comments.writeBehindFlushMs";
+
+  private static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+  /** Most entities datastore accepts in one put call. */
+  private static final int MAX_PUT_SIZE = 500;
+  /** How many comment ids are reserved from datastore at a time. */
+  private static final int ID_BLOCK_SIZE = 100;
+
+  private static final Logger logger = Logger.getLogger(CommentWriteBuffer.class.getName());
+
+  /** One log line: a buffered comment's key and properties. */
+  private static final class CommentRecord {
+    private long id;
+    private String message;
+    private String projectId;
+    private long timestamp;
+    private String email;
+    private String displayName;
+    private String languageCode;
+  }
+
+  private final File logFile;
+  /** The open log. Replaced whenever it is rewritten. Guarded by this. */
+  private FileChannel log;
+  private final ScheduledExecutorService flusher;
+  private final long flushIntervalMs;
+  /** Detects the language of new comments as they are flushed. */
+  private final Translator translator;
+  /** 
+   * Held for the whole of a flush, so a project's comments can't be removed while they are being written,
+   * which would bring them back. Taken before this, never after.
+   */
+  private final Object flushLock = new Object();
+
+  /** Comments not yet confirmed as written to datastore, by key, oldest first. Guarded by this. */
+  private final LinkedHashMap<Key, Entity> pending = new LinkedHashMap<Key, Entity>();
+  /** 
+   * Keys of pending comments that were replayed from the log.
+   * An earlier process may have written and counted them already, so their projects are recounted rather than
+   * incremented. Guarded by this.
+   */
+  private final HashSet<Key> replayed = new HashSet<Key>();
+  /** Remaining ids reserved from datastore. Guarded by this. */
+  private Iterator<Key> allocatedKeys = new ArrayList<Key>().iterator();
+
+  /**
+   * Open (or create) the log at the given path, replay anything left in it, and start flushing.
+   *
+   * @param flushIntervalMs how long a comment may wait in the buffer before being written.
+   * @param translator      detects the language of comments added without one.
+   */
+  public CommentWriteBuffer(File logFile, long flushIntervalMs, Translator translator) throws IOException {
+    this.flushIntervalMs = flushIntervalMs;
+    this.translator = translator;
+    this.logFile = logFile;
+    this.log = openLog(logFile);
+    replay(logFile);
+
+    this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "comment-write-behind");
+      thread.setDaemon(true);
+      return thread;
+    });
+    flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /** 
+   * Build a buffer from servlet init-params.
+   * @return the buffer, or null if write-behind isn't enabled.
+   * @throws IllegalArgumentException if write-behind is enabled without a log path.
+   */
+  public static CommentWriteBuffer fromConfig(ServletConfig config, Translator translator) throws IOException {
+    if (!"true".equals(config.getInitParameter(ENABLED_PARAM))) {
+      return null;
+    }
+    String logPath = config.getInitParameter(LOG_PATH_PARAM);
+    if (logPath == null) {
+      throw new IllegalArgumentException(
+        LOG_PATH_PARAM + " must be set to a file on a persistent disk when " + ENABLED_PARAM + " is on.");
+    }
+    String flushIntervalMs = config.getInitParameter(FLUSH_INTERVAL_MS_PARAM);
+    return new CommentWriteBuffer(
+      new File(logPath),
+      flushIntervalMs == null ? DEFAULT_FLUSH_INTERVAL_MS : Long.parseLong(flushIntervalMs),
+      translator
+    );
+  }
+
+  /** About how long a comment added now takes to reach datastore, if flushes are succeeding. */
+  public long getWriteDelayMs() {
+    return 2 * flushIntervalMs;
+  }
+
+  /** Get a key for a new comment, without a datastore call for most comments. */
+  public synchronized Key allocateKey() {
+    if (!allocatedKeys.hasNext()) {
+      KeyRange range = DatastoreServiceFactory.getDatastoreService().allocateIds("Comment", ID_BLOCK_SIZE);
+      allocatedKeys = range.iterator();
+    }
+    return allocatedKeys.next();
+  }
+
+  /** 
+   * Durably buffer a comment, which must have a key from allocateKey().
+   * Once this returns, the comment will reach datastore even if this process restarts, as long as the log's disk survives.
+   * Leave out its languageCode property to have it detected when it is flushed.
+   */
+  public void add(Entity comment) throws IOException {
+    ByteBuffer line = toLogLine(comment);
+    synchronized (this) {
+      while (line.hasRemaining()) {
+        log.write(line);
+      }
+      log.force(false);
+      pending.put(comment.getKey(), comment);
+    }
+  }
+
+  /** 
+   * Drop a project's comments that aren't written yet, from memory and the log, e.g. before deleting its comments.
+   * Waits for any flush in progress, so none of them reach datastore afterwards.
+   * The log is rewritten even if none were pending, so no line for the project is left to be replayed.
+   *
+   * @return how many comments were dropped.
+   */
+  public int removeProject(String projectId) throws IOException {
+    synchronized (flushLock) {
+      synchronized (this) {
+        int removed = 0;
+        for (Iterator<Entity> comments = pending.values().iterator(); comments.hasNext(); ) {
+          if (projectId != null && projectId.equals(comments.next().getProperty("projectId"))) {
+            comments.remove();
+            removed++;
+          }
+        }
+        rewriteLog();
+        return removed;
+      }
+    }
+  }
+
+  /** Get comments for a project that may not be in datastore yet, newest first. */
+  public List<Entity> getPending(String projectId) {
+    ArrayList<Entity> comments = new ArrayList<Entity>();
+    synchronized (this) {
+      for (Entity comment : pending.values()) {
+        if (projectId != null && projectId.equals(comment.getProperty("projectId"))) {
+          comments.add(comment);
+        }
+      }
+    }
+    comments.sort((a, b) -> Long.compare((long) b.getProperty("timestamp"), (long) a.getProperty("timestamp")));
+    return comments;
+  }
+
+  /** Stop flushing on a timer, and write out everything buffered. */
+  public void shutdown() {
+    flusher.shutdown();
+    try {
+      flusher.awaitTermination(10, TimeUnit.SECONDS);
+      flush();
+      synchronized (this) {
+        log.close();
+      }
+    } catch (InterruptedException interrupted) {
+      Thread.currentThread().interrupt();
+    } catch (IOException | RuntimeException flushFailed) {
+      logger.log(Level.WARNING, "Comments left in write-behind log, to be replayed on restart.", flushFailed);
+    }
+  }
+
+  /** 
+   * Write buffered comments to datastore, count them, then rewrite the log with only those added meanwhile.
+   * Comments without a language have it detected first. Called on a timer, and by tests.
+   */
+  void flush() throws IOException {
+    synchronized (flushLock) {
+      flushLocked();
+    }
+  }
+
+  private void flushLocked() throws IOException {
+    ArrayList<Entity> pendingComments;
+    synchronized (this) {
+      pendingComments = new ArrayList<Entity>(pending.values());
+    }
+    if (pendingComments.isEmpty()) {
+      return;
+    }
+
+    /* Readers share the pending entities, so changes are made to copies. */
+    ArrayList<Entity> toWrite = new ArrayList<Entity>(pendingComments.size());
+    for (Entity comment : pendingComments) {
+      Entity copy = comment.clone();
+      if (!copy.hasProperty("languageCode")) {
+        copy.setProperty("languageCode", detectLanguage((String) copy.getProperty("message")));
+      }
+      toWrite.add(copy);
+    }
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    for (int start = 0; start < toWrite.size(); start += MAX_PUT_SIZE) {
+      try (Metrics.Timer timer = Metrics.DATASTORE.time("flush_comments")) {
+        datastore.put(toWrite.subList(start, Math.min(start + MAX_PUT_SIZE, toWrite.size())));
+      }
+    }
+
+    ArrayList<Entity> added = new ArrayList<Entity>(toWrite.size());
+    HashSet<String> replayedProjects = new HashSet<String>();
+    synchronized (this) {
+      for (Entity comment : toWrite) {
+        if (replayed.contains(comment.getKey())) {
+          replayedProjects.add((String) comment.getProperty("projectId"));
+        } else {
+          added.add(comment);
+        }
+      }
+    }
+    count(added, replayedProjects);
+
+    synchronized (this) {
+      for (Entity comment : toWrite) {
+        pending.remove(comment.getKey());
+        replayed.remove(comment.getKey());
+      }
+      rewriteLog();
+    }
+  }
+
+  /** 
+   * Add newly written comments to their projects' counters, one update per project,
+   * and recount projects with replayed comments, which may have been counted before.
+   * A failure here only leaves counts off until the next recount, so it doesn't fail the flush,
+   * which would write the comments again and count them twice.
+   */
+  private static void count(List<Entity> comments, Set<String> recountProjects) {
+    /* Per project: how many comments, and the latest one's timestamp. */
+    HashMap<String, long[]> counts = new HashMap<String, long[]>();
+    for (Entity comment : comments) {
+      String projectId = (String) comment.getProperty("projectId");
+      if (recountProjects.contains(projectId)) {
+        continue;
+      }
+      long[] count = counts.computeIfAbsent(projectId, project -> new long[2]);
+      count[0]++;
+      count[1] = Math.max(count[1], (long) comment.getProperty("timestamp"));
+    }
+    for (Map.Entry<String, long[]> count : counts.entrySet()) {
+      try {
+        CommentCounter.increment(count.getKey(), count.getValue()[0], count.getValue()[1]);
+      } catch (RuntimeException counterFailed) {
+        logger.log(Level.WARNING, "Failed to count comments for project " + count.getKey(), counterFailed);
+      }
+    }
+    for (String projectId : recountProjects) {
+      try {
+        CommentCounter.recount(projectId);
+      } catch (RuntimeException counterFailed) {
+        logger.log(Level.WARNING, "Failed to recount comments for project " + projectId, counterFailed);
+      }
+    }
+  }
+
+  /** 
+   * Replace the log with one holding only the pending comments. The new log is written alongside and moved over
+   * the old one, so a crash part way leaves one or the other whole. Must hold this.
+   */
+  private void rewriteLog() throws IOException {
+    File rewrittenFile = new File(logFile.getPath() + ".tmp");
+    try (FileChannel rewritten = FileChannel.open(rewrittenFile.toPath(), StandardOpenOption.CREATE,
+           StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      for (Entity comment : pending.values()) {
+        ByteBuffer line = toLogLine(comment);
+        while (line.hasRemaining()) {
+          rewritten.write(line);
+        }
+      }
+      rewritten.force(false);
+    }
+    Files.move(rewrittenFile.toPath(), logFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    log.close();
+    log = openLog(logFile);
+  }
+
+  /** Open a log for appending, creating it if needed. */
+  private static FileChannel openLog(File logFile) throws IOException {
+    FileChannel channel = FileChannel.open(
+      logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    channel.position(channel.size());
+    return channel;
+  }
+
+  /** A failed detection just leaves the language unknown, meaning the comment is always translated. */
+  private String detectLanguage(String message) {
+    try {
+      return translator.detectLanguage(message);
+    } catch (RuntimeException detectionFailed) {
+      return null;
+    }
+  }
+
+  private static ByteBuffer toLogLine(Entity comment) {
+    CommentRecord record = new CommentRecord();
+    record.id = comment.getKey().getId();
+    record.message = (String) comment.getProperty("message");
+    record.projectId = (String) comment.getProperty("projectId");
+    record.timestamp = (long) comment.getProperty("timestamp");
+    record.email = (String) comment.getProperty("email");
+    record.displayName = (String) comment.getProperty("displayName");
+    record.languageCode = (String) comment.getProperty("languageCode");
+    return ByteBuffer.wrap((Json.GSON.toJson(record) + "\n").getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (IOException | RuntimeException flushFailed) {
+      /* Comments stay pending, and are retried next time. */
+      logger.log(Level.WARNING, "Failed to flush buffered comments.", flushFailed);
+    }
+  }
+
+  /** Load comments left in the log back into the pending set. */
+  private void replay(File logFile) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(logFile.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        CommentRecord record;
+        try {
+          record = Json.GSON.fromJson(line, CommentRecord.class);
+        } catch (RuntimeException partialLine) {
+          /* A crash mid-append can leave a partial last line, which was never acknowledged. */
+          continue;
+        }
+        Entity comment = new Entity(KeyFactory.createKey("Comment", record.id));
+        comment.setProperty("message", record.message);
+        comment.setProperty("projectId", record.projectId);
+        comment.setProperty("timestamp", record.timestamp);
+        comment.setProperty("email", record.email);
+        comment.setProperty("displayName", record.displayName);
+        /* Not yet detected, so it is detected when flushed. */
+        if (record.languageCode != null) {
+          comment.setProperty("languageCode", record.languageCode);
+        }
+        pending.put(comment.getKey(), comment);
+        replayed.add(comment.getKey());
+      }
+    }
+  }
+}
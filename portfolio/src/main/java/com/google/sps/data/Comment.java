@@ -23,6 +23,11 @@ public final class Comment {
   private final long id;
   /** The main written content of this comment. */
   private final String message;
+  /** 
+   * Whether message is in the requested language.
+   * False if translation failed or didn't finish in time, in which case message is the original text.
+   */
+  private final boolean translated;
   /** The associated project Id */
   private final String projectId;
   /** The time in ms since Epoch that this comment was created. Server generated. */
@@ -36,16 +41,41 @@ public final class Comment {
    * 
    * @param id          datastore-generated unique id for this comment.
    * @param message     main text of this message, in any language.
+   * @param translated  whether message is in the language the client asked for.
    * @param projectId   projectId this comment is associated with.
    * @param timestamp   comment creation date in MS since Epoch.
    * @param displayName user chosen name to show, instead of their email.
    */
-  public Comment(long id, String message, String projectId, long timestamp, String displayName) {
+  public Comment(long id, String message, boolean translated, String projectId, long timestamp, String displayName) {
     this.id = id;
     this.message = message;
+    this.translated = translated;
     this.projectId = projectId;
     this.timestamp = timestamp;
 	  this.displayName = displayName;
   }
-}
 
+  public long getId() {
+    return id;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public boolean isTranslated() {
+    return translated;
+  }
+
+  public String getProjectId() {
+    return projectId;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public String getDisplayName() {
+    return displayName;
+  }
+}
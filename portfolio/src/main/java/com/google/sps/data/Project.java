@@ -23,7 +23,7 @@ import java.util.List;
 public final class Project {
 
   /** A link from a project to a third party site. */
-  public final class ProjectLink {
+  public static final class ProjectLink {
     /** Displayed name of site/link */
     private final String name;
     /** Actual fully qualified link */
@@ -33,6 +33,14 @@ public final class Project {
         this.name = name;
         this.href = href;
     }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHref() {
+        return href;
+    }
   }
 
   /** The unique data-store assigned id */
@@ -47,13 +55,61 @@ public final class Project {
   private final List<String> details;
   /** A list of links to third-party websites. (e.g Github, demo) */
   private final List<ProjectLink> links;
+  /** How many comments this project has. */
+  private final long commentCount;
+  /** The time in ms since Epoch of the latest comment, or null if there are none. */
+  private final Long lastCommentAt;
 
   public Project(long id, String name, String description, List<String> tags, List<String> details, List<ProjectLink> links) {
+    this(id, name, description, tags, details, links, 0, null);
+  }
+
+  public Project(long id, String name, String description, List<String> tags, List<String> details, List<ProjectLink> links,
+      long commentCount, Long lastCommentAt) {
     this.id = id;
     this.name = name;
     this.description = description;
     this.tags = tags;
     this.details = details;
     this.links = links;
+    this.commentCount = commentCount;
+    this.lastCommentAt = lastCommentAt;
+  }
+
+  /** Get a copy of this project with the given comment summary. */
+  public Project withComments(long commentCount, Long lastCommentAt) {
+    return new Project(id, name, description, tags, details, links, commentCount, lastCommentAt);
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public List<String> getTags() {
+    return tags;
+  }
+
+  public List<String> getDetails() {
+    return details;
+  }
+
+  public List<ProjectLink> getLinks() {
+    return links;
+  }
+
+  public long getCommentCount() {
+    return commentCount;
+  }
+
+  public Long getLastCommentAt() {
+    return lastCommentAt;
   }
 }
@@ -0,0 +1,68 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A response body encoded once and served many times:
+ * its UTF-8 bytes, a gzipped copy, and a strong ETag for conditional requests.
+ */
+public final class CachedBody {
+  private final byte[] bytes;
+  private final byte[] gzippedBytes;
+  private final String eTag;
+
+  private CachedBody(byte[] bytes, byte[] gzippedBytes, String eTag) {
+    this.bytes = bytes;
+    this.gzippedBytes = gzippedBytes;
+    this.eTag = eTag;
+  }
+
+  /** Encode and compress a body, tagging it by its content. */
+  public static CachedBody of(String body) {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    return new CachedBody(bytes, gzip(bytes), HttpCaching.getETag(bytes));
+  }
+
+  /** Callers must not modify the returned array. */
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  /** Callers must not modify the returned array. */
+  public byte[] getGzippedBytes() {
+    return gzippedBytes;
+  }
+
+  public String getETag() {
+    return eTag;
+  }
+
+  private static byte[] gzip(byte[] bytes) {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+    try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed)) {
+      gzipStream.write(bytes);
+    } catch (IOException impossible) {
+      /* Writing to memory doesn't throw. */
+      throw new UncheckedIOException(impossible);
+    }
+    return compressed.toByteArray();
+  }
+}
@@ -0,0 +1,154 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.http;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Helpers for ETags, conditional GETs and gzip content negotiation. */
+public final class HttpCaching {
+  /** Added to a strong ETag for the gzipped copy of its content, whose bytes differ. */
+  private static final String GZIP_SUFFIX = "-gzip";
+
+  private HttpCaching() {}
+
+  /** Get a strong ETag (including its quotes) identifying some content. */
+  public static String getETag(byte[] content) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException impossible) {
+      /* Every JVM is required to support SHA-256. */
+      throw new IllegalStateException(impossible);
+    }
+    byte[] hash = digest.digest(content);
+
+    /* 16 bytes is plenty to tell versions of one resource apart. */
+    StringBuilder eTag = new StringBuilder("\"");
+    for (int i = 0; i < 16; i++) {
+      eTag.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+      eTag.append(Character.forDigit(hash[i] & 0xF, 16));
+    }
+    return eTag.append('"').toString();
+  }
+
+  /** Get a strong ETag (including its quotes) identifying a version string, e.g. a timestamp. */
+  public static String getETag(String version) {
+    return getETag(version.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** 
+   * Get a weak ETag identifying a version string, for responses whose bytes may differ between equivalent versions,
+   * e.g. as translations arrive.
+   */
+  public static String getWeakETag(String version) {
+    return "W/" + getETag(version);
+  }
+
+  /** 
+   * Get the ETag for the gzipped copy of a strong ETag's content, since strong ETags identify exact bytes.
+   * Weak ETags are returned as they are, since both encodings are equivalent.
+   */
+  public static String getGzipETag(String eTag) {
+    if (eTag.startsWith("W/")) {
+      return eTag;
+    }
+    return eTag.substring(0, eTag.length() - 1) + GZIP_SUFFIX + "\"";
+  }
+
+  /**
+   * Set the ETag header, and check it against the request's If-None-Match.
+   * If the client already has this version, respond 304 Not Modified.
+   * Either encoding's ETag matches, since the client's copy is of the same version either way.
+   *
+   * @param eTag the ETag of the representation that would be sent, e.g. from getGzipETag if it is gzipped.
+   * @return true if a 304 was sent, in which case the caller must not write a body.
+   */
+  public static boolean checkNotModified(HttpServletRequest request, HttpServletResponse response, String eTag) {
+    response.setHeader("ETag", eTag);
+    /* Clients may reuse the response, but must revalidate it first. */
+    response.setHeader("Cache-Control", "no-cache");
+
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    String version = getVersion(eTag);
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.equals("*") || getVersion(candidate).equals(version)) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** 
+   * The part of an ETag naming the content's version, without W/ or the gzip suffix.
+   * If-None-Match uses weak comparison, so W/ doesn't matter, and either encoding of a version will do.
+   */
+  private static String getVersion(String eTag) {
+    if (eTag.startsWith("W/")) {
+      eTag = eTag.substring(2);
+    }
+    if (eTag.endsWith(GZIP_SUFFIX + "\"")) {
+      eTag = eTag.substring(0, eTag.length() - GZIP_SUFFIX.length() - 1) + "\"";
+    }
+    return eTag;
+  }
+
+  /** Whether the client accepts gzip-encoded responses. */
+  public static boolean acceptsGzip(HttpServletRequest request) {
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String encoding : acceptEncoding.split(",")) {
+      String[] parts = encoding.trim().split(";");
+      if (parts[0].trim().equalsIgnoreCase("gzip")) {
+        return parts.length < 2 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Send a cached JSON body, or 304 if the client already has it.
+   * The gzipped copy is sent, with its own ETag, to clients that accept it.
+   */
+  public static void writeJson(HttpServletRequest request, HttpServletResponse response, CachedBody body)
+      throws IOException {
+    response.setHeader("Vary", "Accept-Encoding");
+    boolean gzip = acceptsGzip(request);
+    if (checkNotModified(request, response, gzip ? getGzipETag(body.getETag()) : body.getETag())) {
+      return;
+    }
+
+    byte[] bytes = body.getBytes();
+    if (gzip) {
+      bytes = body.getGzippedBytes();
+      response.setHeader("Content-Encoding", "gzip");
+    }
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    response.setContentLength(bytes.length);
+    response.getOutputStream().write(bytes);
+  }
+}
@@ -0,0 +1,82 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.data.Comment;
+import java.io.IOException;
+
+/** Reads and writes Comments without reflection. Matches Gson's default format: fields in order, nulls omitted. */
+final class CommentAdapter extends TypeAdapter<Comment> {
+
+  @Override
+  public void write(JsonWriter out, Comment comment) throws IOException {
+    out.beginObject();
+    out.name("id").value(comment.getId());
+    if (comment.getMessage() != null) {
+      out.name("message").value(comment.getMessage());
+    }
+    out.name("translated").value(comment.isTranslated());
+    if (comment.getProjectId() != null) {
+      out.name("projectId").value(comment.getProjectId());
+    }
+    out.name("timestamp").value(comment.getTimestamp());
+    if (comment.getDisplayName() != null) {
+      out.name("displayName").value(comment.getDisplayName());
+    }
+    out.endObject();
+  }
+
+  @Override
+  public Comment read(JsonReader in) throws IOException {
+    long id = 0;
+    String message = null;
+    boolean translated = false;
+    String projectId = null;
+    long timestamp = 0;
+    String displayName = null;
+
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "id":
+          id = in.nextLong();
+          break;
+        case "message":
+          message = JsonReaders.nextNullableString(in);
+          break;
+        case "translated":
+          translated = in.nextBoolean();
+          break;
+        case "projectId":
+          projectId = JsonReaders.nextNullableString(in);
+          break;
+        case "timestamp":
+          timestamp = in.nextLong();
+          break;
+        case "displayName":
+          displayName = JsonReaders.nextNullableString(in);
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+
+    return new Comment(id, message, translated, projectId, timestamp, displayName);
+  }
+}
@@ -0,0 +1,42 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.google.sps.data.Comment;
+import com.google.sps.data.Project;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+
+/**
+ * The Gson instance shared by every servlet.
+ * Gson is thread-safe and expensive to build, so it is built once, with hand-written adapters
+ * for the types we serialize most, instead of reflecting over their fields on every request.
+ */
+public final class Json {
+  /** Generic types, resolved once rather than through a new TypeToken subclass per call. */
+  public static final Type STRING_LIST_TYPE = new TypeToken<ArrayList<String>>(){}.getType();
+  public static final Type LINK_LIST_TYPE = new TypeToken<ArrayList<Project.ProjectLink>>(){}.getType();
+
+  public static final Gson GSON = new GsonBuilder()
+    .registerTypeAdapter(Comment.class, new CommentAdapter().nullSafe())
+    .registerTypeAdapter(Project.ProjectLink.class, new ProjectLinkAdapter().nullSafe())
+    .registerTypeAdapter(Project.class, new ProjectAdapter(new ProjectLinkAdapter()).nullSafe())
+    .create();
+
+  private Json() {}
+}
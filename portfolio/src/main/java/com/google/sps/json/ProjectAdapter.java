@@ -0,0 +1,144 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.data.Project;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Reads and writes Projects without reflection. Matches Gson's default format: fields in order, nulls omitted. */
+final class ProjectAdapter extends TypeAdapter<Project> {
+  private final ProjectLinkAdapter linkAdapter;
+
+  ProjectAdapter(ProjectLinkAdapter linkAdapter) {
+    this.linkAdapter = linkAdapter;
+  }
+
+  @Override
+  public void write(JsonWriter out, Project project) throws IOException {
+    out.beginObject();
+    out.name("id").value(project.getId());
+    if (project.getName() != null) {
+      out.name("name").value(project.getName());
+    }
+    if (project.getDescription() != null) {
+      out.name("description").value(project.getDescription());
+    }
+    writeStrings(out, "tags", project.getTags());
+    writeStrings(out, "details", project.getDetails());
+    if (project.getLinks() != null) {
+      out.name("links").beginArray();
+      for (Project.ProjectLink link : project.getLinks()) {
+        if (link == null) {
+          out.nullValue();
+        } else {
+          linkAdapter.write(out, link);
+        }
+      }
+      out.endArray();
+    }
+    out.name("commentCount").value(project.getCommentCount());
+    if (project.getLastCommentAt() != null) {
+      out.name("lastCommentAt").value(project.getLastCommentAt());
+    }
+    out.endObject();
+  }
+
+  @Override
+  public Project read(JsonReader in) throws IOException {
+    long id = 0;
+    String name = null;
+    String description = null;
+    List<String> tags = null;
+    List<String> details = null;
+    List<Project.ProjectLink> links = null;
+    long commentCount = 0;
+    Long lastCommentAt = null;
+
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "id":
+          id = in.nextLong();
+          break;
+        case "name":
+          name = JsonReaders.nextNullableString(in);
+          break;
+        case "description":
+          description = JsonReaders.nextNullableString(in);
+          break;
+        case "tags":
+          tags = JsonReaders.nextNullableStrings(in);
+          break;
+        case "details":
+          details = JsonReaders.nextNullableStrings(in);
+          break;
+        case "links":
+          links = readLinks(in);
+          break;
+        case "commentCount":
+          commentCount = in.nextLong();
+          break;
+        case "lastCommentAt":
+          if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+          } else {
+            lastCommentAt = in.nextLong();
+          }
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+
+    return new Project(id, name, description, tags, details, links, commentCount, lastCommentAt);
+  }
+
+  private static void writeStrings(JsonWriter out, String name, List<String> values) throws IOException {
+    if (values == null) {
+      return;
+    }
+    out.name(name).beginArray();
+    for (String value : values) {
+      out.value(value);
+    }
+    out.endArray();
+  }
+
+  private List<Project.ProjectLink> readLinks(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    ArrayList<Project.ProjectLink> links = new ArrayList<Project.ProjectLink>();
+    in.beginArray();
+    while (in.hasNext()) {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        links.add(null);
+      } else {
+        links.add(linkAdapter.read(in));
+      }
+    }
+    in.endArray();
+    return links;
+  }
+}
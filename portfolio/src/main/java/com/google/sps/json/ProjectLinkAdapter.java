@@ -0,0 +1,60 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.data.Project;
+import java.io.IOException;
+
+/** Reads and writes ProjectLinks without reflection. Matches Gson's default format: fields in order, nulls omitted. */
+final class ProjectLinkAdapter extends TypeAdapter<Project.ProjectLink> {
+
+  @Override
+  public void write(JsonWriter out, Project.ProjectLink link) throws IOException {
+    out.beginObject();
+    if (link.getName() != null) {
+      out.name("name").value(link.getName());
+    }
+    if (link.getHref() != null) {
+      out.name("href").value(link.getHref());
+    }
+    out.endObject();
+  }
+
+  @Override
+  public Project.ProjectLink read(JsonReader in) throws IOException {
+    String name = null;
+    String href = null;
+
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "name":
+          name = JsonReaders.nextNullableString(in);
+          break;
+        case "href":
+          href = JsonReaders.nextNullableString(in);
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+
+    return new Project.ProjectLink(name, href);
+  }
+}
@@ -0,0 +1,106 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram with fixed memory and lock-free recording, in the style of HdrHistogram.
+ * Values are in microseconds. Each power of two is split into 32 linear buckets,
+ * so any recorded value is known to within about 3%, from 1us up to about 25 days.
+ * Recording is a few atomic adds, so it is safe on every request.
+ */
+public final class LatencyHistogram {
+  /** Buckets per power of two, as a power of two. */
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  /** Larger values are counted as this. */
+  private static final long MAX_VALUE = (1L << 41) - 1;
+  private static final int BUCKETS = getBucket(MAX_VALUE) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+
+  /** Record one value, in microseconds. Negative values are recorded as 0. */
+  public void record(long micros) {
+    long value = Math.min(Math.max(micros, 0), MAX_VALUE);
+    counts.incrementAndGet(getBucket(value));
+    count.increment();
+    sum.add(value);
+  }
+
+  /** @return how many values have been recorded. */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /** @return the sum of every value recorded, in microseconds. */
+  public long getSum() {
+    return sum.sum();
+  }
+
+  /**
+   * Get a percentile of the recorded values.
+   * Reads race with recording, so the result may include some values recorded meanwhile.
+   *
+   * @param quantile between 0 and 1, e.g. 0.99 for the 99th percentile.
+   * @return the highest value in the bucket holding that percentile, in microseconds, or 0 if nothing is recorded.
+   */
+  public long getValueAtQuantile(double quantile) {
+    long[] snapshot = new long[BUCKETS];
+    long total = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      snapshot[bucket] = counts.get(bucket);
+      total += snapshot[bucket];
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += snapshot[bucket];
+      if (seen >= rank) {
+        return getHighestValue(bucket);
+      }
+    }
+    return MAX_VALUE;
+  }
+
+  /**
+   * Values below SUB_BUCKETS get a bucket each.
+   * Above that, a value's bucket is its power of two and its next SUB_BUCKET_BITS highest bits.
+   */
+  private static int getBucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    return shift * SUB_BUCKETS + (int) (value >>> shift);
+  }
+
+  private static long getHighestValue(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long top = bucket % SUB_BUCKETS + SUB_BUCKETS;
+    return ((top + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,198 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency metrics and counters for the whole app, exported at /metrics in Prometheus text format.
+ * Time a block of work with try-with-resources:
+ *
+ *   try (Metrics.Timer timer = Metrics.DATASTORE.time("latest_comment")) { ... }
+ *
+ * and count events with Metrics.TRANSLATION_LOOKUPS.get("cache").increment().
+ */
+public final class Metrics {
+  /** Quantiles exported for every histogram. */
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+  /** Requests, by servlet path and method. Recorded by MetricsFilter. */
+  public static final Family HTTP = new Family(
+    "sps_http_request_duration_seconds", "Time to serve a request, until its response is complete.",
+    "endpoint", "method");
+  /** Datastore queries and batch operations, by what they are for. */
+  public static final Family DATASTORE = new Family(
+    "sps_datastore_duration_seconds", "Time spent in one datastore query or batch operation.",
+    "operation");
+  /** Every Translate API call, by method. */
+  public static final Family TRANSLATE = new Family(
+    "sps_translate_duration_seconds", "Time spent in one Translate API call.",
+    "operation");
+  /** Encoding responses, by what is encoded. */
+  public static final Family SERIALIZATION = new Family(
+    "sps_serialization_duration_seconds", "Time spent encoding and writing response data.",
+    "operation");
+
+  private static final List<Family> FAMILIES = Arrays.asList(HTTP, DATASTORE, TRANSLATE, SERIALIZATION);
+
+  /** Where each comment translation served came from: stored, cache or miss (translated on demand). */
+  public static final CounterFamily TRANSLATION_LOOKUPS = new CounterFamily(
+    "sps_translation_lookups_total", "Comment translations looked up, by where they were found.",
+    "source");
+
+  private static final List<CounterFamily> COUNTER_FAMILIES = Arrays.asList(TRANSLATION_LOOKUPS);
+
+  private Metrics() {}
+
+  /** One metric name, with a histogram per combination of label values. */
+  public static final class Family {
+    private final String name;
+    private final String help;
+    private final String[] labelNames;
+    /** Histograms by their encoded labels, e.g. {operation="translate"}. */
+    private final ConcurrentMap<String, LatencyHistogram> histograms =
+      new ConcurrentHashMap<String, LatencyHistogram>();
+
+    private Family(String name, String help, String... labelNames) {
+      this.name = name;
+      this.help = help;
+      this.labelNames = labelNames;
+    }
+
+    /**
+     * Get the histogram for some label values, creating it on first use.
+     * Label values should come from a small fixed set, since each one is kept forever.
+     */
+    public LatencyHistogram get(String... labelValues) {
+      String key = encodeLabels(name, labelNames, labelValues);
+      LatencyHistogram histogram = histograms.get(key);
+      return histogram != null ? histogram : histograms.computeIfAbsent(key, created -> new LatencyHistogram());
+    }
+
+    /** Start timing something. It is recorded when the timer is closed. */
+    public Timer time(String... labelValues) {
+      return new Timer(get(labelValues));
+    }
+
+    /** Write as a Prometheus summary, with one series per label combination, sorted for stable output. */
+    private void write(Writer writer) throws IOException {
+      writer.write("# HELP " + name + " " + help + "\n");
+      writer.write("# TYPE " + name + " summary\n");
+      for (Map.Entry<String, LatencyHistogram> series : new TreeMap<String, LatencyHistogram>(histograms).entrySet()) {
+        String labels = series.getKey();
+        LatencyHistogram histogram = series.getValue();
+        /* Quantile is one more label, inside the braces. */
+        String labelsPrefix = labels.length() == 2 ? "{" : labels.substring(0, labels.length() - 1) + ",";
+        for (double quantile : QUANTILES) {
+          writer.write(name + labelsPrefix + "quantile=\"" + quantile + "\"} "
+            + toSeconds(histogram.getValueAtQuantile(quantile)) + "\n");
+        }
+        writer.write(name + "_sum" + labels + " " + toSeconds(histogram.getSum()) + "\n");
+        writer.write(name + "_count" + labels + " " + histogram.getCount() + "\n");
+      }
+    }
+  }
+
+  /** One counter name, with a count per combination of label values. */
+  public static final class CounterFamily {
+    private final String name;
+    private final String help;
+    private final String[] labelNames;
+    /** Counts by their encoded labels, e.g. {source="cache"}. */
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+
+    private CounterFamily(String name, String help, String... labelNames) {
+      this.name = name;
+      this.help = help;
+      this.labelNames = labelNames;
+    }
+
+    /**
+     * Get the counter for some label values, creating it on first use.
+     * Label values should come from a small fixed set, since each one is kept forever.
+     */
+    public LongAdder get(String... labelValues) {
+      String key = encodeLabels(name, labelNames, labelValues);
+      LongAdder counter = counters.get(key);
+      return counter != null ? counter : counters.computeIfAbsent(key, created -> new LongAdder());
+    }
+
+    /** Write as a Prometheus counter, with one series per label combination, sorted for stable output. */
+    private void write(Writer writer) throws IOException {
+      writer.write("# HELP " + name + " " + help + "\n");
+      writer.write("# TYPE " + name + " counter\n");
+      for (Map.Entry<String, LongAdder> series : new TreeMap<String, LongAdder>(counters).entrySet()) {
+        writer.write(name + series.getKey() + " " + series.getValue().sum() + "\n");
+      }
+    }
+  }
+
+  /** Times one piece of work, from creation until closed. */
+  public static final class Timer implements AutoCloseable {
+    private final LatencyHistogram histogram;
+    private final long startNanos = System.nanoTime();
+
+    private Timer(LatencyHistogram histogram) {
+      this.histogram = histogram;
+    }
+
+    /** Record the time since this timer was started. */
+    @Override
+    public void close() {
+      histogram.record((System.nanoTime() - startNanos) / 1000);
+    }
+  }
+
+  /** Write every metric in Prometheus text exposition format. */
+  public static void writePrometheus(Writer writer) throws IOException {
+    for (Family family : FAMILIES) {
+      family.write(writer);
+    }
+    for (CounterFamily family : COUNTER_FAMILIES) {
+      family.write(writer);
+    }
+  }
+
+  /** Encode label values as Prometheus labels, e.g. {operation="translate"}, checking they match the names. */
+  private static String encodeLabels(String name, String[] labelNames, String[] labelValues) {
+    if (labelValues.length != labelNames.length) {
+      throw new IllegalArgumentException(name + " takes labels " + Arrays.toString(labelNames));
+    }
+    StringBuilder labels = new StringBuilder("{");
+    for (int i = 0; i < labelNames.length; i++) {
+      if (i > 0) {
+        labels.append(',');
+      }
+      labels.append(labelNames[i]).append("=\"").append(escape(labelValues[i])).append('"');
+    }
+    return labels.append('}').toString();
+  }
+
+  private static String toSeconds(long micros) {
+    return Double.toString(micros / 1e6);
+  }
+
+  private static String escape(String labelValue) {
+    return String.valueOf(labelValue).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
@@ -0,0 +1,109 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.io.IOException;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * Records how long each API request takes, into Metrics.HTTP by servlet path and method.
+ * Async requests are timed until they complete, not just until the servlet returns.
+ * /comments/stream is left out, since its requests mostly time how long nobody comments.
+ */
+@WebFilter(urlPatterns = {"/auth", "/bootstrap", "/comments", "/projects"}, asyncSupported = true)
+public class MetricsFilter implements Filter {
+
+  @Override
+  public void init(FilterConfig config) {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    TimedRequest timedRequest =
+      new TimedRequest(httpRequest, Metrics.HTTP.get(httpRequest.getServletPath(), httpRequest.getMethod()));
+    try {
+      chain.doFilter(timedRequest, response);
+    } finally {
+      if (!timedRequest.async) {
+        timedRequest.record();
+      }
+    }
+  }
+
+  /**
+   * A request that, if made async, is recorded when it completes.
+   * The listener is added as soon as the servlet starts async, so it can't miss a quick completion.
+   */
+  private static final class TimedRequest extends HttpServletRequestWrapper implements AsyncListener {
+    private final LatencyHistogram histogram;
+    private final long startNanos = System.nanoTime();
+    /** Only read by the thread that ran the servlet. */
+    private boolean async = false;
+
+    TimedRequest(HttpServletRequest request, LatencyHistogram histogram) {
+      super(request);
+      this.histogram = histogram;
+    }
+
+    @Override
+    public AsyncContext startAsync() {
+      return listenTo(super.startAsync());
+    }
+
+    @Override
+    public AsyncContext startAsync(ServletRequest request, ServletResponse response) {
+      return listenTo(super.startAsync(request, response));
+    }
+
+    private AsyncContext listenTo(AsyncContext asyncContext) {
+      async = true;
+      asyncContext.addListener(this);
+      return asyncContext;
+    }
+
+    void record() {
+      histogram.record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      record();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {}
+
+    @Override
+    public void onError(AsyncEvent event) {}
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {}
+  }
+
+  @Override
+  public void destroy() {}
+}
@@ -0,0 +1,334 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.projects;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query;
+import com.google.sps.comments.CommentCounter;
+import com.google.sps.data.Project;
+import com.google.sps.http.CachedBody;
+import com.google.sps.json.Json;
+import com.google.sps.metrics.Metrics;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+
+/**
+ * An in-memory copy of every project, along with their JSON encodings, gzipped copies and ETags.
+ * Projects change rarely, so /projects can be served from here instead of scanning and decoding
+ * every Project entity per request. The copy is reloaded after a TTL, or sooner if invalidated.
+ *
+ * Comment counts change far more often than projects, so they are kept apart, in their own snapshot
+ * with a much shorter TTL, and merged into the projects' JSON when either changes.
+ * New comments show up in counts within that TTL without reloading any projects.
+ */
+public final class ProjectCache {
+  /** Context init-param names, settable through web.xml. */
+  public static final String TTL_MS_PARAM = "projects.cacheTtlMs";
+  public static final String COMMENT_COUNTS_TTL_MS_PARAM = "projects.commentCountsTtlMs";
+  private static final long DEFAULT_TTL_MS = 60 * 1000;
+  private static final long DEFAULT_COMMENT_COUNTS_TTL_MS = 5 * 1000;
+
+  /** The ServletContext attribute the shared cache is stored under. */
+  private static final String ATTRIBUTE = ProjectCache.class.getName();
+
+  private static final Logger logger = Logger.getLogger(ProjectCache.class.getName());
+
+  /** Every project, as loaded in one pass over the Project kind, without comment counts. Never modified. */
+  private static final class Catalog {
+    private final List<Project> projects;
+    private final TagIndex tagIndex;
+    private final ProjectSearchIndex searchIndex;
+    /** When this catalog was loaded, in ms since Epoch. */
+    private final long loadedAt;
+
+    private Catalog(List<Project> projects, long loadedAt) {
+      this.projects = projects;
+      this.tagIndex = new TagIndex(projects);
+      this.searchIndex = new ProjectSearchIndex(projects);
+      this.loadedAt = loadedAt;
+    }
+  }
+
+  /** Every project's comment summary, by projectId, as read in one query. Never modified. */
+  private static final class CommentCounts {
+    private final Map<String, CommentCounter.Summary> summaries;
+    /** When the query started, in ms since Epoch. */
+    private final long loadedAt;
+
+    private CommentCounts(Map<String, CommentCounter.Summary> summaries, long loadedAt) {
+      this.summaries = summaries;
+      this.loadedAt = loadedAt;
+    }
+  }
+
+  /** A catalog merged with comment counts, ready to serve. Never modified once built. */
+  public static final class Snapshot {
+    private final Catalog catalog;
+    private final CommentCounts commentCounts;
+    private final List<Project> projects;
+    private final Map<Long, Project> projectsById;
+    /** JSON of all projects. */
+    private final CachedBody allProjectsBody;
+    /** JSON of each project, by id. */
+    private final Map<Long, CachedBody> projectBodyById;
+
+    private Snapshot(Catalog catalog, CommentCounts commentCounts, List<Project> projects,
+        Map<Long, Project> projectsById, CachedBody allProjectsBody, Map<Long, CachedBody> projectBodyById) {
+      this.catalog = catalog;
+      this.commentCounts = commentCounts;
+      this.projects = projects;
+      this.projectsById = projectsById;
+      this.allProjectsBody = allProjectsBody;
+      this.projectBodyById = projectBodyById;
+    }
+
+    /** @return every project, with comment counts. */
+    public List<Project> getProjects() {
+      return projects;
+    }
+
+    /** @return the project with comment counts, or null if there isn't one with this id. */
+    public Project getProject(long projectId) {
+      return projectsById.get(projectId);
+    }
+
+    public CachedBody getAllProjectsBody() {
+      return allProjectsBody;
+    }
+
+    /** @return the JSON body, or null if there isn't a project with this id. */
+    public CachedBody getProjectBody(long projectId) {
+      return projectBodyById.get(projectId);
+    }
+
+    /** Projects by tag. Its projects have no comment counts; look them up with getProject for those. */
+    public TagIndex getTagIndex() {
+      return catalog.tagIndex;
+    }
+
+    /** Projects by the words in them. Its projects have no comment counts; look them up with getProject for those. */
+    public ProjectSearchIndex getSearchIndex() {
+      return catalog.searchIndex;
+    }
+
+    /** @return when the projects were loaded, in ms since Epoch. */
+    public long getLoadedAt() {
+      return catalog.loadedAt;
+    }
+  }
+
+  private final long ttlMs;
+  private final long commentCountsTtlMs;
+  /** The current catalog, or null if it must be reloaded before use. */
+  private volatile Catalog catalog;
+  /** The latest comment counts, or null before the first load. */
+  private volatile CommentCounts commentCounts;
+  /** Counts loaded at or before this time, in ms since Epoch, are out of date. */
+  private volatile long commentCountsInvalidatedAt = 0;
+  /** Whether a thread is reloading counts, while the others serve the previous ones. */
+  private final AtomicBoolean reloadingCommentCounts = new AtomicBoolean(false);
+  /** The last snapshot merged, reused while its catalog and counts are current. */
+  private volatile Snapshot snapshot;
+
+  public ProjectCache(long ttlMs, long commentCountsTtlMs) {
+    this.ttlMs = ttlMs;
+    this.commentCountsTtlMs = commentCountsTtlMs;
+  }
+
+  /** Get the cache shared by every servlet in this context, creating it on first use. */
+  public static ProjectCache get(ServletContext context) {
+    synchronized (context) {
+      ProjectCache cache = (ProjectCache) context.getAttribute(ATTRIBUTE);
+      if (cache == null) {
+        String ttlMs = context.getInitParameter(TTL_MS_PARAM);
+        String commentCountsTtlMs = context.getInitParameter(COMMENT_COUNTS_TTL_MS_PARAM);
+        cache = new ProjectCache(
+          ttlMs == null ? DEFAULT_TTL_MS : Long.parseLong(ttlMs),
+          commentCountsTtlMs == null ? DEFAULT_COMMENT_COUNTS_TTL_MS : Long.parseLong(commentCountsTtlMs));
+        context.setAttribute(ATTRIBUTE, cache);
+      }
+      return cache;
+    }
+  }
+
+  /** 
+   * Get a current snapshot, reloading projects from datastore first if they have expired or been invalidated,
+   * and comment counts if theirs have.
+   */
+  public Snapshot getSnapshot() {
+    Catalog currentCatalog = getCatalog();
+    CommentCounts currentCommentCounts = getCommentCounts();
+    Snapshot current = snapshot;
+    if (isMergedFrom(current, currentCatalog, currentCommentCounts)) {
+      return current;
+    }
+
+    /* Merging is only encoding, but still worth doing once rather than in every waiting thread. */
+    synchronized (this) {
+      current = snapshot;
+      if (!isMergedFrom(current, currentCatalog, currentCommentCounts)) {
+        current = merge(currentCatalog, currentCommentCounts);
+        snapshot = current;
+      }
+      return current;
+    }
+  }
+
+  /** 
+   * Whether a snapshot is of this catalog and these counts.
+   * Reloaded counts that haven't changed share the previous map, so comparing maps by identity is enough.
+   */
+  private static boolean isMergedFrom(Snapshot snapshot, Catalog catalog, CommentCounts commentCounts) {
+    return snapshot != null && snapshot.catalog == catalog && snapshot.commentCounts.summaries == commentCounts.summaries;
+  }
+
+  /** Drop the current projects, so the next read reloads them from datastore. Call after changing projects. */
+  public void invalidate() {
+    catalog = null;
+  }
+
+  /** 
+   * Have the next read reload comment counts, e.g. after deleting a project's comments.
+   * Adding comments needn't call this, since counts are reloaded often anyway.
+   */
+  public void invalidateCommentCounts() {
+    commentCountsInvalidatedAt = System.currentTimeMillis();
+  }
+
+  private Catalog getCatalog() {
+    Catalog current = catalog;
+    if (current != null && System.currentTimeMillis() - current.loadedAt < ttlMs) {
+      return current;
+    }
+
+    /* Only one thread reloads; the others wait and then use its result. */
+    synchronized (this) {
+      current = catalog;
+      if (current == null || System.currentTimeMillis() - current.loadedAt >= ttlMs) {
+        try (Metrics.Timer timer = Metrics.DATASTORE.time("load_projects")) {
+          current = loadCatalog();
+        }
+        catalog = current;
+      }
+      return current;
+    }
+  }
+
+  /** 
+   * Get current comment counts. Once there are some, out of date ones are reloaded by one thread
+   * while the rest keep serving the previous counts, so a reload never holds up a request but its own.
+   */
+  private CommentCounts getCommentCounts() {
+    CommentCounts current = commentCounts;
+    if (current != null && isCurrent(current)) {
+      return current;
+    }
+    if (current != null && !reloadingCommentCounts.compareAndSet(false, true)) {
+      return current;
+    }
+
+    if (current == null) {
+      /* Nothing to serve yet, so wait for the first load. */
+      synchronized (reloadingCommentCounts) {
+        current = commentCounts;
+        if (current == null) {
+          current = loadCommentCounts(null);
+          commentCounts = current;
+        }
+        return current;
+      }
+    }
+
+    try {
+      CommentCounts reloaded = loadCommentCounts(current);
+      commentCounts = reloaded;
+      return reloaded;
+    } catch (RuntimeException reloadFailed) {
+      logger.log(Level.WARNING, "Failed to reload comment counts; serving the previous ones.", reloadFailed);
+      return current;
+    } finally {
+      reloadingCommentCounts.set(false);
+    }
+  }
+
+  private boolean isCurrent(CommentCounts counts) {
+    return System.currentTimeMillis() - counts.loadedAt < commentCountsTtlMs
+             && counts.loadedAt > commentCountsInvalidatedAt;
+  }
+
+  /** Read and decode every project. */
+  private static Catalog loadCatalog() {
+    long loadedAt = System.currentTimeMillis();
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    ArrayList<Project> projects = new ArrayList<Project>();
+    for (Entity entity : datastore.prepare(new Query("Project")).asIterable()) {
+      projects.add(ProjectEntities.getProject(entity));
+    }
+    return new Catalog(Collections.unmodifiableList(projects), loadedAt);
+  }
+
+  /** 
+   * All projects' comment counts in one query, rather than one per project.
+   * If they are the same as the previous counts, the previous map is kept, so snapshots merged from it are reused
+   * instead of every project being encoded again.
+   *
+   * @param previous the counts being reloaded, or null if there are none.
+   */
+  private static CommentCounts loadCommentCounts(CommentCounts previous) {
+    long loadedAt = System.currentTimeMillis();
+    Map<String, CommentCounter.Summary> summaries = CommentCounter.getAll();
+    if (previous != null && previous.summaries.equals(summaries)) {
+      summaries = previous.summaries;
+    }
+    return new CommentCounts(summaries, loadedAt);
+  }
+
+  /** Add comment counts to every project, and encode them. */
+  private static Snapshot merge(Catalog catalog, CommentCounts commentCounts) {
+    ArrayList<Project> projects = new ArrayList<Project>(catalog.projects.size());
+    HashMap<Long, Project> projectsById = new HashMap<Long, Project>();
+    HashMap<Long, CachedBody> projectBodyById = new HashMap<Long, CachedBody>();
+    try (Metrics.Timer timer = Metrics.SERIALIZATION.time("project_cache")) {
+      for (Project project : catalog.projects) {
+        CommentCounter.Summary comments = commentCounts.summaries.get(String.valueOf(project.getId()));
+        if (comments != null) {
+          project = project.withComments(comments.getCount(), comments.getLastCommentAt());
+        }
+        projects.add(project);
+        projectsById.put(project.getId(), project);
+        projectBodyById.put(project.getId(), CachedBody.of(Json.GSON.toJson(project)));
+      }
+
+      return new Snapshot(
+        catalog,
+        commentCounts,
+        Collections.unmodifiableList(projects),
+        projectsById,
+        CachedBody.of(Json.GSON.toJson(projects)),
+        projectBodyById
+      );
+    }
+  }
+}
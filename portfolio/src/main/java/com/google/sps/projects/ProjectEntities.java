@@ -0,0 +1,129 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.projects;
+
+import com.google.appengine.api.datastore.EmbeddedEntity;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Text;
+import com.google.sps.data.Project;
+import com.google.sps.json.Json;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Converts between Project entities in datastore and Project objects.
+ * 
+ * Projects were originally stored with tags, details and links as Gson-encoded strings.
+ * They are now stored natively: tags and details as lists of strings, and links as a list of
+ * embedded entities with name and href properties. Both formats can be read, and migrate()
+ * rewrites an entity from the old format to the new one.
+ */
+public final class ProjectEntities {
+
+  private ProjectEntities() {}
+
+  /** Decode a Project entity in either format. */
+  public static Project getProject(Entity entity) {
+    long id = entity.getKey().getId();
+
+    String name = (String) entity.getProperty("name");
+    String description = (String) entity.getProperty("description");
+
+    return new Project(id, name, description, getTags(entity), getDetails(entity), getLinks(entity));
+  }
+
+  /** Whether an entity still has any Gson-encoded list properties. */
+  public static boolean isLegacy(Entity entity) {
+    return entity.getProperty("tags") instanceof String
+        || entity.getProperty("details") instanceof String
+        || entity.getProperty("links") instanceof String;
+  }
+
+  /** 
+   * Rewrite an entity's list properties in the native format, in place.
+   * Tags stay indexed so they can be queried on; details and links are only ever read.
+   */
+  public static void migrate(Entity entity) {
+    entity.setProperty("tags", getTags(entity));
+    entity.setUnindexedProperty("details", getDetails(entity));
+
+    ArrayList<EmbeddedEntity> links = new ArrayList<EmbeddedEntity>();
+    for (Project.ProjectLink link : getLinks(entity)) {
+      EmbeddedEntity linkEntity = new EmbeddedEntity();
+      linkEntity.setUnindexedProperty("name", link.getName());
+      linkEntity.setUnindexedProperty("href", link.getHref());
+      links.add(linkEntity);
+    }
+    entity.setUnindexedProperty("links", links);
+  }
+
+  private static List<String> getTags(Entity entity) {
+    Object tags = entity.getProperty("tags");
+    if (tags instanceof String) {
+      return Json.GSON.fromJson((String) tags, Json.STRING_LIST_TYPE);
+    }
+    return getStrings(tags);
+  }
+
+  private static List<String> getDetails(Entity entity) {
+    Object details = entity.getProperty("details");
+    if (details instanceof String) {
+      return Json.GSON.fromJson((String) details, Json.STRING_LIST_TYPE);
+    }
+    return getStrings(details);
+  }
+
+  private static List<Project.ProjectLink> getLinks(Entity entity) {
+    Object links = entity.getProperty("links");
+    if (links instanceof String) {
+      return Json.GSON.fromJson((String) links, Json.LINK_LIST_TYPE);
+    }
+    if (links == null) {
+      return Collections.emptyList();
+    }
+
+    ArrayList<Project.ProjectLink> projectLinks = new ArrayList<Project.ProjectLink>();
+    for (Object link : (Collection<?>) links) {
+      EmbeddedEntity linkEntity = (EmbeddedEntity) link;
+      projectLinks.add(new Project.ProjectLink(
+        getString(linkEntity.getProperty("name")),
+        getString(linkEntity.getProperty("href"))
+      ));
+    }
+    return projectLinks;
+  }
+
+  /** Read a native list property. Datastore stores empty lists as null. */
+  private static List<String> getStrings(Object values) {
+    if (values == null) {
+      return Collections.emptyList();
+    }
+    ArrayList<String> strings = new ArrayList<String>();
+    for (Object value : (Collection<?>) values) {
+      strings.add(getString(value));
+    }
+    return strings;
+  }
+
+  /** Strings over 1500 bytes must be stored as Text, so accept either. */
+  private static String getString(Object value) {
+    if (value instanceof Text) {
+      return ((Text) value).getValue();
+    }
+    return (String) value;
+  }
+}
@@ -0,0 +1,206 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.projects;
+
+import com.google.sps.data.Project;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A ranked full-text index over project names, descriptions and details.
+ * 
+ * Matches are scored with BM25, counting a term in the name 3 times and in the description twice,
+ * so better targeted projects rank first. Every query word also matches longer words it is a prefix of,
+ * so results show up while the user is still typing.
+ * Postings are stored in flat int arrays, sorted by term so prefixes are a contiguous range.
+ * Built once per project cache snapshot, and never modified afterwards.
+ */
+public final class ProjectSearchIndex {
+  /** BM25 term frequency saturation. */
+  private static final float K1 = 1.2f;
+  /** BM25 document length normalization. */
+  private static final float B = 0.75f;
+
+  private static final int NAME_WEIGHT = 3;
+  private static final int DESCRIPTION_WEIGHT = 2;
+  private static final int DETAILS_WEIGHT = 1;
+
+  /** The indexed projects, in catalog order. */
+  private final List<Project> projects;
+  /** Every distinct term, sorted. */
+  private final String[] terms;
+  /** For each term, positions in projects containing it, ascending. */
+  private final int[][] postingProjects;
+  /** For each term, its weighted frequency in the project at the same index of postingProjects. */
+  private final int[][] postingFrequencies;
+  /** Weighted number of terms in each project. */
+  private final int[] projectLengths;
+  private final float averageProjectLength;
+
+  public ProjectSearchIndex(List<Project> projects) {
+    this.projects = projects;
+    this.projectLengths = new int[projects.size()];
+
+    /* Sorted so that prefix ranges are contiguous once flattened into arrays. */
+    TreeMap<String, ArrayList<int[]>> postingsByTerm = new TreeMap<String, ArrayList<int[]>>();
+    long totalLength = 0;
+    for (int position = 0; position < projects.size(); position++) {
+      HashMap<String, Integer> frequencies = new HashMap<String, Integer>();
+      Project project = projects.get(position);
+      addTerms(frequencies, project.getName(), NAME_WEIGHT);
+      addTerms(frequencies, project.getDescription(), DESCRIPTION_WEIGHT);
+      if (project.getDetails() != null) {
+        for (String detail : project.getDetails()) {
+          addTerms(frequencies, detail, DETAILS_WEIGHT);
+        }
+      }
+
+      for (Map.Entry<String, Integer> frequency : frequencies.entrySet()) {
+        postingsByTerm.computeIfAbsent(frequency.getKey(), term -> new ArrayList<int[]>())
+          .add(new int[] {position, frequency.getValue()});
+        projectLengths[position] += frequency.getValue();
+      }
+      totalLength += projectLengths[position];
+    }
+    this.averageProjectLength = projects.isEmpty() ? 1 : Math.max(1, (float) totalLength / projects.size());
+
+    this.terms = new String[postingsByTerm.size()];
+    this.postingProjects = new int[terms.length][];
+    this.postingFrequencies = new int[terms.length][];
+    int t = 0;
+    for (Map.Entry<String, ArrayList<int[]>> postings : postingsByTerm.entrySet()) {
+      terms[t] = postings.getKey();
+      postingProjects[t] = new int[postings.getValue().size()];
+      postingFrequencies[t] = new int[postings.getValue().size()];
+      for (int i = 0; i < postings.getValue().size(); i++) {
+        postingProjects[t][i] = postings.getValue().get(i)[0];
+        postingFrequencies[t][i] = postings.getValue().get(i)[1];
+      }
+      t++;
+    }
+  }
+
+  /**
+   * Find projects matching a free-text query, best matches first.
+   * A project matches if any query word is a prefix of one of its words.
+   *
+   * @param query words to search for, in any case.
+   * @param limit most projects to return.
+   */
+  public List<Project> search(String query, int limit) {
+    List<String> queryTerms = tokenize(query);
+    if (queryTerms.isEmpty() || limit <= 0) {
+      return new ArrayList<Project>();
+    }
+
+    float[] scores = new float[projects.size()];
+    /* The best score each project got from the current query word, over all terms it prefixes. */
+    float[] termScores = new float[projects.size()];
+    for (String queryTerm : queryTerms) {
+      Arrays.fill(termScores, 0);
+      int end = findPrefixEnd(queryTerm);
+      for (int t = findPrefixStart(queryTerm); t < end; t++) {
+        scoreTerm(t, termScores);
+      }
+      for (int position = 0; position < scores.length; position++) {
+        scores[position] += termScores[position];
+      }
+    }
+
+    return getTopProjects(scores, limit);
+  }
+
+  /** Apply BM25 for one term, keeping each project's best score. */
+  private void scoreTerm(int term, float[] termScores) {
+    int[] matchingProjects = postingProjects[term];
+    int[] frequencies = postingFrequencies[term];
+    float idf = (float) Math.log(1 + (projects.size() - matchingProjects.length + 0.5) / (matchingProjects.length + 0.5));
+
+    for (int i = 0; i < matchingProjects.length; i++) {
+      int position = matchingProjects[i];
+      float lengthNorm = 1 - B + B * projectLengths[position] / averageProjectLength;
+      float score = idf * frequencies[i] * (K1 + 1) / (frequencies[i] + K1 * lengthNorm);
+      termScores[position] = Math.max(termScores[position], score);
+    }
+  }
+
+  /** Get the highest scoring projects with a score above zero, best first, ties in catalog order. */
+  private List<Project> getTopProjects(float[] scores, int limit) {
+    /* Candidates are few compared to the catalog, so collect and sort only those. */
+    ArrayList<Integer> matches = new ArrayList<Integer>();
+    for (int position = 0; position < scores.length; position++) {
+      if (scores[position] > 0) {
+        matches.add(position);
+      }
+    }
+    matches.sort((a, b) -> {
+      int byScore = Float.compare(scores[b], scores[a]);
+      return byScore != 0 ? byScore : Integer.compare(a, b);
+    });
+
+    ArrayList<Project> topProjects = new ArrayList<Project>(Math.min(limit, matches.size()));
+    for (int i = 0; i < matches.size() && i < limit; i++) {
+      topProjects.add(projects.get(matches.get(i)));
+    }
+    return topProjects;
+  }
+
+  /** Index of the first term >= prefix. */
+  private int findPrefixStart(String prefix) {
+    int index = Arrays.binarySearch(terms, prefix);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  /** Index after the last term starting with prefix. */
+  private int findPrefixEnd(String prefix) {
+    int end = findPrefixStart(prefix);
+    while (end < terms.length && terms[end].startsWith(prefix)) {
+      end++;
+    }
+    return end;
+  }
+
+  private static void addTerms(Map<String, Integer> frequencies, String text, int weight) {
+    for (String term : tokenize(text)) {
+      frequencies.merge(term, weight, Integer::sum);
+    }
+  }
+
+  /** Split text into lowercase runs of letters and digits. */
+  static List<String> tokenize(String text) {
+    ArrayList<String> tokens = new ArrayList<String>();
+    if (text == null) {
+      return tokens;
+    }
+
+    String lowerText = text.toLowerCase(Locale.ROOT);
+    int start = -1;
+    for (int i = 0; i <= lowerText.length(); i++) {
+      boolean isWordCharacter = i < lowerText.length() && Character.isLetterOrDigit(lowerText.charAt(i));
+      if (isWordCharacter && start < 0) {
+        start = i;
+      } else if (!isWordCharacter && start >= 0) {
+        tokens.add(lowerText.substring(start, i));
+        start = -1;
+      }
+    }
+    return tokens;
+  }
+}
@@ -0,0 +1,154 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.projects;
+
+import com.google.sps.data.Project;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An inverted index from tag to the projects that have it. Tags are matched case-insensitively.
+ * Built once per project cache snapshot, and never modified afterwards.
+ */
+public final class TagIndex {
+  private static final int[] NO_PROJECTS = new int[0];
+
+  /** The indexed projects, in catalog order. */
+  private final List<Project> projects;
+  /** Positions in projects of those with each (lowercased) tag, ascending. */
+  private final Map<String, int[]> postings;
+
+  /** Index projects by their tags. Positions in the given list are used as project ids internally. */
+  public TagIndex(List<Project> projects) {
+    this.projects = projects;
+
+    HashMap<String, ArrayList<Integer>> positionsByTag = new HashMap<String, ArrayList<Integer>>();
+    for (int i = 0; i < projects.size(); i++) {
+      List<String> tags = projects.get(i).getTags();
+      if (tags == null) {
+        continue;
+      }
+      for (String tag : tags) {
+        if (tag == null) {
+          continue;
+        }
+        ArrayList<Integer> positions = positionsByTag.computeIfAbsent(normalize(tag), key -> new ArrayList<Integer>());
+        /* Positions are added in increasing order, so a duplicate tag can only repeat the last one. */
+        if (positions.isEmpty() || positions.get(positions.size() - 1) != i) {
+          positions.add(i);
+        }
+      }
+    }
+
+    this.postings = new HashMap<String, int[]>();
+    for (Map.Entry<String, ArrayList<Integer>> entry : positionsByTag.entrySet()) {
+      int[] positions = new int[entry.getValue().size()];
+      for (int i = 0; i < positions.length; i++) {
+        positions[i] = entry.getValue().get(i);
+      }
+      postings.put(entry.getKey(), positions);
+    }
+  }
+
+  /** 
+   * Get projects having every one of the given tags, in catalog order.
+   * No tags matches every project.
+   */
+  public List<Project> matchAll(Collection<String> tags) {
+    if (tags.isEmpty()) {
+      return projects;
+    }
+
+    /* Intersect the shortest postings first, so the candidate set shrinks as fast as possible. */
+    int[][] tagPostings = new int[tags.size()][];
+    int t = 0;
+    for (String tag : tags) {
+      tagPostings[t++] = getPostings(tag);
+    }
+    Arrays.sort(tagPostings, (a, b) -> Integer.compare(a.length, b.length));
+
+    int[] matches = tagPostings[0];
+    for (int i = 1; i < tagPostings.length && matches.length > 0; i++) {
+      matches = intersect(matches, tagPostings[i]);
+    }
+    return getProjects(matches);
+  }
+
+  /** 
+   * Get projects having at least one of the given tags, in catalog order.
+   * No tags matches every project.
+   */
+  public List<Project> matchAny(Collection<String> tags) {
+    if (tags.isEmpty()) {
+      return projects;
+    }
+
+    BitSet matches = new BitSet(projects.size());
+    for (String tag : tags) {
+      for (int position : getPostings(tag)) {
+        matches.set(position);
+      }
+    }
+
+    ArrayList<Project> matchingProjects = new ArrayList<Project>(matches.cardinality());
+    for (int position = matches.nextSetBit(0); position >= 0; position = matches.nextSetBit(position + 1)) {
+      matchingProjects.add(projects.get(position));
+    }
+    return matchingProjects;
+  }
+
+  private int[] getPostings(String tag) {
+    int[] positions = postings.get(normalize(tag));
+    return positions == null ? NO_PROJECTS : positions;
+  }
+
+  private List<Project> getProjects(int[] positions) {
+    ArrayList<Project> matchingProjects = new ArrayList<Project>(positions.length);
+    for (int position : positions) {
+      matchingProjects.add(projects.get(position));
+    }
+    return matchingProjects;
+  }
+
+  /** Merge two ascending arrays, keeping values in both. */
+  private static int[] intersect(int[] a, int[] b) {
+    int[] both = new int[Math.min(a.length, b.length)];
+    int count = 0;
+    int i = 0;
+    int j = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        both[count++] = a[i];
+        i++;
+        j++;
+      }
+    }
+    return Arrays.copyOf(both, count);
+  }
+
+  private static String normalize(String tag) {
+    return tag.toLowerCase(Locale.ROOT);
+  }
+}
@@ -0,0 +1,96 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.servlets;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Ends an async request once its timeout passes, and keeps its future chain from writing afterwards.
+ * Without this the container would end the request at the timeout while the chain, still running,
+ * went on to write into a response that had already been recycled for another request.
+ *
+ * Each write runs through runIfActive, which excludes the timeout while it runs;
+ * once the request has ended, it skips the write and the chain should stop.
+ */
+final class AsyncDeadline implements AsyncListener {
+  private final AsyncContext asyncContext;
+  /** Whether the request has completed, timed out or failed. Guarded by this. */
+  private boolean ended = false;
+
+  private AsyncDeadline(AsyncContext asyncContext) {
+    this.asyncContext = asyncContext;
+  }
+
+  /** Set a request's timeout, and start watching for it. */
+  static AsyncDeadline start(AsyncContext asyncContext, long timeoutMs) {
+    AsyncDeadline deadline = new AsyncDeadline(asyncContext);
+    asyncContext.setTimeout(timeoutMs);
+    asyncContext.addListener(deadline);
+    return deadline;
+  }
+
+  /** 
+   * Run one step of the response unless the request has ended. The timeout waits for it to return.
+   * @return whether the step ran.
+   */
+  synchronized boolean runIfActive(Runnable step) {
+    if (ended) {
+      return false;
+    }
+    step.run();
+    return true;
+  }
+
+  /** Complete the request, unless it has already ended. */
+  synchronized void complete() {
+    if (!ended) {
+      ended = true;
+      asyncContext.complete();
+    }
+  }
+
+  /** Answer 503 if nothing was written yet, so clients know to retry, and end the request. */
+  @Override
+  public synchronized void onTimeout(AsyncEvent event) {
+    if (!ended) {
+      ended = true;
+      HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+      if (!response.isCommitted()) {
+        response.setStatus(503);
+      }
+      asyncContext.complete();
+    }
+  }
+
+  @Override
+  public synchronized void onError(AsyncEvent event) {
+    if (!ended) {
+      ended = true;
+      asyncContext.complete();
+    }
+  }
+
+  @Override
+  public synchronized void onComplete(AsyncEvent event) {
+    ended = true;
+  }
+
+  @Override
+  public void onStartAsync(AsyncEvent event) {}
+}
@@ -16,9 +16,13 @@ package com.google.sps.servlets;
 
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
-import com.google.gson.Gson;
+import com.google.sps.json.Json;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.servlet.ServletContext;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -29,8 +33,11 @@ import javax.servlet.http.HttpServletResponse;
  * While Google Auth handles actual authentication, this lets the client query
  * the current auth state, and supplies login/logout URLs.
 */
-@WebServlet("/auth")
+@WebServlet(urlPatterns = "/auth", loadOnStartup = 1)
 public class AuthServlet extends HttpServlet {
+    /** The ServletContext attribute this servlet is stored under, for other servlets to reuse. */
+    private static final String ATTRIBUTE = AuthServlet.class.getName();
+
     /** Used to get and Gson serialize a login link */
     class LoginRedirect {
         /** Fully qualified login redirect url from Appengine Users api */
@@ -50,7 +57,43 @@ public class AuthServlet extends HttpServlet {
         }
     }
     
+    /** How many (redirectUrl, auth state) answers to keep. Each is a few hundred bytes. */
+    private static final int MAX_CACHED_BODIES = 1000;
+    /** Init-param name for how long browsers may reuse an answer, in seconds. */
+    public static final String MAX_AGE_SECONDS_PARAM = "auth.maxAgeSeconds";
+    private static final int DEFAULT_MAX_AGE_SECONDS = 60;
+
     private UserService userService = UserServiceFactory.getUserService();
+
+    private int maxAgeSeconds;
+
+    /**
+     * Encoded JSON answers, by auth state and redirect url, least recently used first.
+     * Login and logout urls depend only on these, so they are generated once rather than on every page load.
+     */
+    private final Map<String, byte[]> cachedBodies = Collections.synchronizedMap(
+        new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > MAX_CACHED_BODIES;
+            }
+        }
+    );
+
+    /**
+     * Get the context's AuthServlet, so others can answer auth queries the same way.
+     * It is loaded on startup, so it is always there once the context is serving.
+     */
+    static AuthServlet get(ServletContext context) {
+        return (AuthServlet) context.getAttribute(ATTRIBUTE);
+    }
+
+    @Override
+    public void init() {
+        String maxAge = getInitParameter(MAX_AGE_SECONDS_PARAM);
+        maxAgeSeconds = maxAge == null ? DEFAULT_MAX_AGE_SECONDS : Integer.parseInt(maxAge);
+        getServletContext().setAttribute(ATTRIBUTE, this);
+    }
     
     /**
      * Returns either status code 200 and json logout url, indicating user is authenticated,
@@ -64,28 +107,34 @@ public class AuthServlet extends HttpServlet {
             return;
         }
 
-        Gson gson = new Gson();
-        
-        // Unauthenticated, send login url.
-        if(request.getUserPrincipal() == null){
-            // Send back a login url.
-            LoginRedirect loginRedirect = new LoginRedirect(redirectUrl);
-            
-            response.setStatus(401);
-            response.setContentType("application/json");
-            response.getWriter().println(
-                gson.toJson(loginRedirect)
-            );
-            return;
-        }
+        // Unauthenticated: 401 and a login url. Authenticated: 200 and a logout url.
+        boolean loggedIn = request.getUserPrincipal() != null;
+        byte[] body = getBody(redirectUrl, loggedIn);
 
-        // Authenticated, send logout url.
-        LogoutRedirect logoutRedirect = new LogoutRedirect(redirectUrl);
-        response.setStatus(200);
+        response.setStatus(loggedIn ? 200 : 401);
+        // The answer is per user, and changes on login or logout, which change the session cookie.
+        response.setHeader("Cache-Control", "private, max-age=" + maxAgeSeconds);
+        response.setHeader("Vary", "Cookie");
         response.setContentType("application/json");
-        response.getWriter().println(
-            gson.toJson(logoutRedirect)
-        );
+        response.setCharacterEncoding("UTF-8");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
     }
-}
 
+    /** Get the JSON doGet would answer with: {logoutUrl} if logged in, otherwise {loginUrl}. */
+    String getJson(String redirectUrl, boolean loggedIn) {
+        return new String(getBody(redirectUrl, loggedIn), StandardCharsets.UTF_8).trim();
+    }
+
+    /** Get the encoded JSON answer for an auth state, generating and caching it on first use. */
+    private byte[] getBody(String redirectUrl, boolean loggedIn) {
+        String key = (loggedIn ? "logout:" : "login:") + redirectUrl;
+        byte[] body = cachedBodies.get(key);
+        if(body == null){
+            Object redirect = loggedIn ? new LogoutRedirect(redirectUrl) : new LoginRedirect(redirectUrl);
+            body = (Json.GSON.toJson(redirect) + "\n").getBytes(StandardCharsets.UTF_8);
+            cachedBodies.put(key, body);
+        }
+        return body;
+    }
+}
@@ -0,0 +1,183 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.data.Comment;
+import com.google.sps.http.CachedBody;
+import com.google.sps.json.Json;
+import com.google.sps.metrics.Metrics;
+import com.google.sps.projects.ProjectCache;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Everything project-detail.html needs to first render, in one request instead of three:
+ * the auth state from /auth, the project from /projects and the first page of comments from /comments.
+ * They are looked up on the request thread, reusing those servlets' caches, since App Engine APIs
+ * can't be called from other threads. Only translating comments and writing the response happen after it is released.
+ */
+@WebServlet(urlPatterns = "/bootstrap", asyncSupported = true)
+public class BootstrapServlet extends HttpServlet {
+
+  private static final Logger logger = Logger.getLogger(BootstrapServlet.class.getName());
+
+  /** Init-param name for how many threads write responses. */
+  public static final String THREADS_PARAM = "bootstrap.threads";
+  private static final int DEFAULT_THREADS = 10;
+  /** How many comments are sent when commentsCount isn't given, matching project-detail.js. */
+  private static final int DEFAULT_COMMENTS_COUNT = 5;
+  /** Longest a request may take before the container ends it, in ms. */
+  private static final long ASYNC_TIMEOUT_MS = 60 * 1000;
+
+  private ProjectCache projectCache;
+  private AuthServlet authServlet;
+  private CommentsServlet commentsServlet;
+  /** Writes responses once their comments are translated. */
+  private ExecutorService executor;
+
+  @Override
+  public void init() {
+    projectCache = ProjectCache.get(getServletContext());
+    authServlet = AuthServlet.get(getServletContext());
+    commentsServlet = CommentsServlet.get(getServletContext());
+
+    String threads = getInitParameter(THREADS_PARAM);
+    AtomicInteger threadCount = new AtomicInteger();
+    executor = Executors.newFixedThreadPool(
+      threads == null ? DEFAULT_THREADS : Integer.parseInt(threads),
+      runnable -> {
+        Thread thread = new Thread(runnable, "bootstrap-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdown();
+  }
+
+  /**
+   * Responds with {auth, project, comments}, where each is what the matching endpoint would send:
+   * auth is /auth's {loginUrl} or {logoutUrl} (or null without a redirectUrl query param),
+   * project is /projects?projectId=, and comments is /comments' first page of commentsCount comments
+   * in languageCode.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    long projectId;
+    try {
+      projectId = Long.parseLong(request.getParameter("projectId"));
+    } catch (NumberFormatException badRequest) {
+      response.setStatus(404);
+      response.getWriter().println("Invalid project ID.");
+      return;
+    }
+
+    /* The desired output language code in ISO-639-1 format, defaulting to english. */
+    String languageCode = request.getParameter("languageCode") == null
+                                  ? "en"
+                                  : request.getParameter("languageCode");
+    int commentsCount = DEFAULT_COMMENTS_COUNT;
+    try {
+      commentsCount = Math.max(1, Integer.parseInt(request.getParameter("commentsCount")));
+    } catch (NumberFormatException expectedIfNoCount) {
+      /* Use the default count. */
+    }
+    String redirectUrl = request.getParameter("redirectUrl");
+    boolean loggedIn = request.getUserPrincipal() != null;
+
+    CachedBody project;
+    try {
+      project = ProjectsServlet.getOneProjectJson(projectCache, projectId);
+    } catch (EntityNotFoundException expectedIfBadId) {
+      response.setStatus(404);
+      response.getWriter().println("Invalid project ID.");
+      return;
+    }
+    String auth = redirectUrl == null ? null : authServlet.getJson(redirectUrl, loggedIn);
+
+    /* Comments are read now, and translated after the container thread is released. */
+    CompletableFuture<CommentsServlet.FirstPage> comments =
+      commentsServlet.getFirstPage(String.valueOf(projectId), commentsCount, languageCode);
+
+    AsyncDeadline deadline = AsyncDeadline.start(request.startAsync(), ASYNC_TIMEOUT_MS);
+    comments
+      .thenAcceptAsync(
+        firstPage -> deadline.runIfActive(() -> writeResponse(response, auth, project, firstPage)), executor)
+      .whenComplete((ignored, failed) -> {
+        if (failed != null) {
+          logger.log(Level.WARNING, "Failed to bootstrap project " + projectId, failed);
+          deadline.runIfActive(() -> {
+            if (!response.isCommitted()) {
+              response.setStatus(500);
+            }
+          });
+        }
+        deadline.complete();
+      });
+  }
+
+  /** Write the combined document, embedding the pre-encoded auth and project JSON as they are. */
+  private void writeResponse(
+      HttpServletResponse response, String auth, CachedBody project, CommentsServlet.FirstPage comments) {
+    try {
+      /* Holds per-user auth state, so it mustn't be shared or reused. */
+      response.setHeader("Cache-Control", "private, no-store");
+      response.setContentType("application/json");
+      response.setCharacterEncoding("UTF-8");
+
+      try (Metrics.Timer timer = Metrics.SERIALIZATION.time("bootstrap")) {
+        JsonWriter jsonWriter = new JsonWriter(response.getWriter());
+        jsonWriter.beginObject();
+        jsonWriter.name("auth");
+        if (auth == null) {
+          jsonWriter.nullValue();
+        } else {
+          jsonWriter.jsonValue(auth);
+        }
+        jsonWriter.name("project").jsonValue(new String(project.getBytes(), StandardCharsets.UTF_8));
+
+        jsonWriter.name("comments").beginObject();
+        jsonWriter.name("comments").beginArray();
+        for (Comment comment : comments.getComments()) {
+          Json.GSON.toJson(comment, Comment.class, jsonWriter);
+        }
+        jsonWriter.endArray();
+        jsonWriter.name("nextCursor").value(comments.getNextCursor());
+        jsonWriter.endObject();
+
+        jsonWriter.endObject();
+        jsonWriter.flush();
+        response.getWriter().println();
+      }
+    } catch (IOException writeFailed) {
+      throw new UncheckedIOException(writeFailed);
+    }
+  }
+}
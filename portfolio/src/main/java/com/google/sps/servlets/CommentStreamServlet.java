@@ -0,0 +1,242 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.servlets;
+
+import com.google.sps.comments.CommentHub;
+import com.google.sps.data.Comment;
+import com.google.sps.json.Json;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Long-polls a project's new comments, so project pages see them without reloading /comments.
+ * Responds with {comments: Comment[], after: number} as soon as there are comments newer than query param after
+ * (ms since Epoch), or with no comments once the timeout passes. comments are newest first, as in /comments,
+ * translated to query param languageCode. Passing after back gets the comments following these.
+ *
+ * App Engine standard buffers whole responses, so a stream would never reach the client; each poll ends instead.
+ * Polls are held asynchronously and written with non-blocking I/O, so a waiting poll costs no thread.
+ * Comments posted on this instance answer polls at once. Those posted on other instances are found
+ * by the next poll's catch-up query.
+ */
+@WebServlet(urlPatterns = "/comments/stream", asyncSupported = true)
+public class CommentStreamServlet extends HttpServlet {
+
+  private static final Logger logger = Logger.getLogger(CommentStreamServlet.class.getName());
+
+  /** Init-param name for how long a poll waits for new comments, in ms. */
+  public static final String TIMEOUT_MS_PARAM = "comments.streamTimeoutMs";
+  /** Well within App Engine's 60 s request deadline. */
+  private static final long DEFAULT_TIMEOUT_MS = 30 * 1000;
+
+  private long timeoutMs;
+  private CommentHub hub;
+  private CommentsServlet commentsServlet;
+
+  @Override
+  public void init() {
+    String streamTimeoutMs = getInitParameter(TIMEOUT_MS_PARAM);
+    timeoutMs = streamTimeoutMs == null ? DEFAULT_TIMEOUT_MS : Long.parseLong(streamTimeoutMs);
+    hub = CommentHub.get(getServletContext());
+    commentsServlet = CommentsServlet.get(getServletContext());
+  }
+
+  /** Wait for comments on the project given by query param projectId, posted after query param after. */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String projectId = request.getParameter("projectId");
+    if (projectId == null) {
+      response.setStatus(400);
+      response.getWriter().println("Missing projectId.");
+      return;
+    }
+
+    /* The desired output language code in ISO-639-1 format, defaulting to english. */
+    String languageCode = request.getParameter("languageCode") == null
+                                  ? "en"
+                                  : request.getParameter("languageCode");
+
+    /* Without after, only comments posted from now on are sent. */
+    Long after = null;
+    try {
+      after = Long.parseLong(request.getParameter("after"));
+    } catch (NumberFormatException expectedIfNoAfter) {
+      /* Start from now. */
+    }
+
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader("Cache-Control", "no-store");
+
+    AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(timeoutMs);
+    Poll poll = new Poll(asyncContext, projectId, languageCode, after == null ? System.currentTimeMillis() : after);
+    asyncContext.addListener(poll);
+    response.getOutputStream().setWriteListener(poll);
+
+    /* Subscribe before catching up, so a comment posted in between is published to this poll rather than missed. */
+    hub.subscribe(projectId, languageCode, poll);
+    if (after == null) {
+      return;
+    }
+    try {
+      commentsServlet.getCommentsAfter(projectId, after, languageCode).whenComplete((comments, failed) -> {
+        if (failed != null) {
+          logger.log(Level.WARNING, "Failed to catch up on comments for project " + projectId, failed);
+        } else if (!comments.isEmpty()) {
+          poll.respond(comments);
+        }
+      });
+    } catch (RuntimeException catchUpFailed) {
+      /* Newly posted comments still answer the poll. */
+      logger.log(Level.WARNING, "Failed to catch up on comments for project " + projectId, catchUpFailed);
+    }
+  }
+
+  /**
+   * One waiting poll. The first comments found answer it; anything after that waits for the next poll.
+   * The response is written whenever the connection can take it, so a slow client never blocks
+   * the thread publishing a comment.
+   */
+  private final class Poll implements CommentHub.Subscriber, WriteListener, AsyncListener {
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream output;
+    private final String projectId;
+    private final String languageCode;
+    private final long after;
+    /** The response, or null until there is one. Guarded by this. */
+    private byte[] body = null;
+    /** Guarded by this. */
+    private boolean written = false;
+    /** Guarded by this. */
+    private boolean ended = false;
+
+    Poll(AsyncContext asyncContext, String projectId, String languageCode, long after) throws IOException {
+      this.asyncContext = asyncContext;
+      this.output = asyncContext.getResponse().getOutputStream();
+      this.projectId = projectId;
+      this.languageCode = languageCode;
+      this.after = after;
+    }
+
+    @Override
+    public void send(Comment comment, String commentJson) {
+      respond(Collections.singletonList(commentJson), Math.max(after, comment.getTimestamp()));
+    }
+
+    /** Answer with caught-up comments, newest first. */
+    void respond(List<Comment> comments) {
+      List<String> commentJsons = new ArrayList<String>();
+      long newest = after;
+      for (Comment comment : comments) {
+        commentJsons.add(Json.GSON.toJson(comment, Comment.class));
+        newest = Math.max(newest, comment.getTimestamp());
+      }
+      respond(commentJsons, newest);
+    }
+
+    /** Answer with encoded comments, unless already answered. */
+    private void respond(List<String> commentJsons, long newAfter) {
+      synchronized (this) {
+        if (body != null || ended) {
+          return;
+        }
+        body = encodeBody(commentJsons, newAfter);
+      }
+      hub.unsubscribe(projectId, languageCode, this);
+      onWritePossible();
+    }
+
+    /** Write the response, if there is one and the connection will take it without blocking, then end. */
+    @Override
+    public synchronized void onWritePossible() {
+      if (body == null || ended) {
+        return;
+      }
+      try {
+        if (!written) {
+          if (!output.isReady()) {
+            return;
+          }
+          output.write(body);
+          written = true;
+        }
+        /* Otherwise the container calls again once the body is out. */
+        if (output.isReady()) {
+          end();
+        }
+      } catch (IOException clientGone) {
+        end();
+      }
+    }
+
+    @Override
+    public void onError(Throwable writeFailed) {
+      end();
+    }
+
+    /** Nothing was posted in time, so answer with no comments. The client polls again from the same point. */
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      respond(Collections.<String>emptyList(), after);
+      /* The container ends the request after this returns, so complete it even if the body is still going out. */
+      end();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      end();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      hub.unsubscribe(projectId, languageCode, this);
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {}
+
+    /** Complete the request. Safe to call more than once. */
+    private synchronized void end() {
+      if (ended) {
+        return;
+      }
+      ended = true;
+      hub.unsubscribe(projectId, languageCode, this);
+      asyncContext.complete();
+    }
+  }
+
+  /** Build {comments: [...], after}, embedding the pre-encoded comments as they are. */
+  private static byte[] encodeBody(List<String> commentJsons, long after) {
+    return ("{\"comments\":[" + String.join(",", commentJsons) + "],\"after\":" + after + "}\n")
+             .getBytes(StandardCharsets.UTF_8);
+  }
+}
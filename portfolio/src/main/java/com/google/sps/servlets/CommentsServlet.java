@@ -14,6 +14,8 @@
 
 package com.google.sps.servlets;
 
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
@@ -21,18 +23,50 @@ import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.cloud.translate.Translate;
-import com.google.cloud.translate.TranslateOptions;
-import com.google.cloud.translate.Translation;
-import com.google.gson.Gson;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.comments.CommentCounter;
+import com.google.sps.comments.CommentHub;
+import com.google.sps.comments.CommentWriteBuffer;
 import com.google.sps.data.Comment;
+import com.google.sps.http.HttpCaching;
+import com.google.sps.json.Json;
+import com.google.sps.metrics.Metrics;
+import com.google.sps.projects.ProjectCache;
+import com.google.sps.translation.PretranslationQueue;
+import com.google.sps.translation.TranslationBatcher;
+import com.google.sps.translation.TranslationCache;
+import com.google.sps.translation.TranslationExecutor;
+import com.google.sps.translation.Translator;
+import com.google.sps.translation.Translators;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Callable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -43,12 +77,146 @@ import javax.servlet.http.HttpServletResponse;
  * All requests must be accompanied by a projectId query-param, as comments are many-to-one to projects.
  * Only comments for the requested project will be served.
  */
-@WebServlet("/comments")
+@WebServlet(urlPatterns = "/comments", asyncSupported = true, loadOnStartup = 1)
 public class CommentsServlet extends HttpServlet {
 
+  /** The ServletContext attribute this servlet is stored under, for other servlets to reuse. */
+  private static final String ATTRIBUTE = CommentsServlet.class.getName();
+
+  private static final Logger logger = Logger.getLogger(CommentsServlet.class.getName());
+
+  /** Most keys datastore accepts in one delete call. */
+  private static final int DELETE_BATCH_SIZE = 500;
+  /** Most delete batches in flight at once for one request. */
+  private static final int MAX_PARALLEL_DELETES = 4;
+  /** Most comments sent to catch up a /comments/stream poll; a client further behind than this reloads. */
+  private static final int MAX_COMMENTS_AFTER = 100;
+
+  /** 
+   * Most comments sent per GET, including when all are asked for. Bounds the memory a request holds,
+   * since a page is read in full on the request thread before it is translated and written.
+   */
+  private static final int MAX_PAGE_SIZE = 500;
+
+  /** Init-param name for how many comments are translated and written at a time. */
+  public static final String STREAM_CHUNK_SIZE_PARAM = "comments.streamChunkSize";
+  private static final int DEFAULT_STREAM_CHUNK_SIZE = 100;
+
+  /** Init-param name for how many threads write responses. */
+  public static final String IO_THREADS_PARAM = "comments.ioThreads";
+  private static final int DEFAULT_IO_THREADS = 20;
+  /** Longest an async GET may take before the container ends it, in ms. */
+  private static final long ASYNC_TIMEOUT_MS = 60 * 1000;
+
+  /** How many ETags of partially translated responses to remember. */
+  private static final int MAX_PARTIAL_ETAGS = 1000;
+
+  private int streamChunkSize;
+  /** 
+   * Writes GET responses once their comments are translated.
+   * Requests waiting on translations hold none of these threads, nor container threads.
+   * Datastore is only read on request threads, since App Engine APIs can't be called from threads like these.
+   */
+  private ExecutorService ioExecutor;
+
+  /** 
+   * ETags of responses sent with untranslated comments, most recent last.
+   * Conditional requests for these get a full response, in case the translations are ready now.
+   */
+  private final Set<String> partialETags = Collections.newSetFromMap(Collections.synchronizedMap(
+    new LinkedHashMap<String, Boolean>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+        return size() > MAX_PARTIAL_ETAGS;
+      }
+    }
+  ));
+
+  /** Shared, thread-safe translation client. */
+  private Translator translator;
+  /** Shared pool for translations, living as long as the servlet does. */
+  private TranslationExecutor translationExecutor;
+  /** Translations already done, by comment id and language. */
+  private TranslationCache translationCache;
+  /** Groups uncached messages so each Translate call handles many comments. */
+  private TranslationBatcher translationBatcher;
+  /** Buffers new comments before they are written to datastore. Null unless write-behind is enabled. */
+  private CommentWriteBuffer writeBuffer;
+  /** Where new comments are published for /comments/stream. */
+  private CommentHub commentHub;
+
+  /** The first comments of a project, with where the next page starts. */
+  static final class FirstPage {
+    private final List<Comment> comments;
+    /** Null if these are all the comments. */
+    private final String nextCursor;
+
+    private FirstPage(List<Comment> comments, String nextCursor) {
+      this.comments = comments;
+      this.nextCursor = nextCursor;
+    }
+
+    List<Comment> getComments() {
+      return comments;
+    }
+
+    String getNextCursor() {
+      return nextCursor;
+    }
+  }
+
+  /** 
+   * Get the context's CommentsServlet, so others can read comments the same way.
+   * It is loaded on startup, so it is always there once the context is serving.
+   */
+  static CommentsServlet get(ServletContext context) {
+    return (CommentsServlet) context.getAttribute(ATTRIBUTE);
+  }
+
+  @Override
+  public void init() throws ServletException {
+    String chunkSize = getInitParameter(STREAM_CHUNK_SIZE_PARAM);
+    streamChunkSize = chunkSize == null ? DEFAULT_STREAM_CHUNK_SIZE : Integer.parseInt(chunkSize);
+    String ioThreads = getInitParameter(IO_THREADS_PARAM);
+    AtomicInteger ioThreadCount = new AtomicInteger();
+    ioExecutor = Executors.newFixedThreadPool(
+      ioThreads == null ? DEFAULT_IO_THREADS : Integer.parseInt(ioThreads),
+      runnable -> {
+        Thread thread = new Thread(runnable, "comments-io-" + ioThreadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    translator = Translators.fromConfig(getServletConfig());
+    translationExecutor = TranslationExecutor.fromConfig(getServletConfig());
+    translationCache = TranslationCache.fromConfig(getServletConfig());
+    translationBatcher = TranslationBatcher.fromConfig(getServletConfig());
+    commentHub = CommentHub.get(getServletContext());
+    try {
+      writeBuffer = CommentWriteBuffer.fromConfig(getServletConfig(), translator);
+    } catch (IOException logUnavailable) {
+      throw new ServletException("Could not open comment write-behind log.", logUnavailable);
+    }
+    getServletContext().setAttribute(ATTRIBUTE, this);
+  }
+
+  @Override
+  public void destroy() {
+    if (writeBuffer != null) {
+      writeBuffer.shutdown();
+    }
+    translationExecutor.shutdown();
+    ioExecutor.shutdown();
+  }
+
   /** 
    * Get N comments for a given project. 
    * Each comment is translated to the language indicated by query param languageCode, per ISO-639-1
+   * Responds with {comments: Comment[], nextCursor?: string}. Passing nextCursor back as startCursor
+   * gets the following N comments. Pages hold at most MAX_PAGE_SIZE comments, even if all are asked for.
+   *
+   * Comments are read from datastore on the container thread, which App Engine APIs need. The request is then
+   * handled asynchronously: translations are awaited without blocking any thread and responses are written
+   * on the I/O pool, so the container thread is released as soon as the comments are read.
    */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -59,12 +227,75 @@ public class CommentsServlet extends HttpServlet {
      * We keep it as a string to allow for this possibility.
      */
     String commentsCount = request.getParameter("commentsCount");
+    /* Where to resume from, as returned in nextCursor by a previous request. Null for the first page. */
+    String startCursor = request.getParameter("startCursor");
+
+    /* The desired output language code in ISO-639-1 format, defaulting to english. */
+    String languageCode = request.getParameter("languageCode") == null
+                                  ? "en"
+                                  : request.getParameter("languageCode");
+
+    CommentPage page = startPage(request, response, projectId, commentsCount, startCursor, languageCode);
+    if (page == null) {
+      return;
+    }
+
+    AsyncDeadline deadline = AsyncDeadline.start(request.startAsync(), ASYNC_TIMEOUT_MS);
+    writeRemainingChunks(page, deadline).whenComplete((ignored, failed) -> {
+      if (failed != null) {
+        logger.log(Level.WARNING, "Failed to serve comments for project " + projectId, failed);
+        deadline.runIfActive(() -> {
+          if (!response.isCommitted()) {
+            response.setStatus(500);
+          }
+        });
+      }
+      deadline.complete();
+    });
+  }
+
+  /** 
+   * Check the client's cached copy, then start the JSON response and read the page's comments.
+   * Must run on the request thread, since it reads from datastore.
+   *
+   * @return the page to stream comments into, or null if the response is already complete.
+   */
+  private CommentPage startPage(HttpServletRequest request, HttpServletResponse response,
+      String projectId, String commentsCount, String startCursor, String languageCode) throws IOException {
+    /* Load query. */
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+
+    /* 
+     * Comments posted but not yet written to datastore, newest first.
+     * These are newer than any in datastore, so they are shown at the start of the first page.
+     */
+    List<Entity> bufferedEntities = writeBuffer == null || startCursor != null
+                                      ? Collections.<Entity>emptyList()
+                                      : writeBuffer.getPending(projectId);
 
     /*
-     * The desired output language code in ISO-639-1 format.
-     * Final because it is used in a lambda below.
+     * The comments only change when one is added or removed, which changes the latest comment.
+     * Check that with one small projection query, before doing any real datastore or translation work.
+     * Their translations can still change as pretranslations land, so the ETag is weak:
+     * it names the set of comments, not the exact bytes.
      */
-    final String languageCode = request.getParameter("languageCode");
+    String eTag = HttpCaching.getWeakETag(String.join("\n",
+      String.valueOf(projectId),
+      languageCode,
+      String.valueOf(commentsCount),
+      String.valueOf(startCursor),
+      getLatestCommentVersion(datastore, projectId),
+      bufferedEntities.isEmpty() ? "" : String.valueOf(bufferedEntities.get(0).getKey().getId())
+    ));
+    boolean clientHasCurrentCopy = HttpCaching.checkNotModified(request, response, eTag);
+    if (clientHasCurrentCopy && !partialETags.contains(eTag)) {
+      return null;
+    }
+    if (clientHasCurrentCopy) {
+      /* The client's copy had untranslated comments, so send a fresh one instead of a 304. */
+      response.setStatus(200);
+    }
+    response.setHeader("Vary", "Accept-Encoding");
 
     /* 
      * Get comments from datastore. 
@@ -73,94 +304,456 @@ public class CommentsServlet extends HttpServlet {
     Query commentsQuery = new Query("Comment")
                             .addSort("timestamp", Query.SortDirection.DESCENDING)
                             .addFilter("projectId", Query.FilterOperator.EQUAL, projectId);
-    /* Load query. */
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
     PreparedQuery commentResults = datastore.prepare(commentsQuery);
 
     /*
-     * Apply limit if necessary. 
-     * Use offset 0 so that we can have a default options if try/catch fails.
+     * Apply limit. Even "all comments" is capped at MAX_PAGE_SIZE, with nextCursor for the rest,
+     * since the page is read into memory before it is written. Counts below one get a single comment.
      */
-    FetchOptions options = FetchOptions.Builder.withOffset(0);
+    int limit = MAX_PAGE_SIZE;
     try {
-        Integer limit = Integer.parseInt(commentsCount);
-        options = options.limit(limit);
+        limit = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(commentsCount)));
     } catch (NumberFormatException expectedIfNoLimit){
-        /** Don't set limit if not needed. */
+        /** Use the largest page. */
+    }
+    FetchOptions options = FetchOptions.Builder.withLimit(limit);
+
+    /* Continue from the end of the previous page, rather than skipping over it again. */
+    if (startCursor != null) {
+      try {
+        options = options.startCursor(Cursor.fromWebSafeString(startCursor));
+      } catch (IllegalArgumentException badCursor) {
+        response.setStatus(400);
+        response.getWriter().println("Invalid cursor.");
+        return null;
+      }
+    }
+
+    /*
+     * Write comments out a chunk at a time, translating each chunk just before it is written,
+     * so the first comments go out while later ones are still being translated.
+     */
+    options = options.chunkSize(streamChunkSize);
+    List<List<Entity>> chunks = new ArrayList<List<Entity>>();
+    QueryResultIterator<Entity> commentIterator = commentResults.asQueryResultIterator(options);
+    int commentsFetched = fetchChunks(bufferedEntities, commentIterator, chunks);
+
+    /* Only a full page might have more comments after it. Null when all comments have been loaded. */
+    String nextCursor = commentsFetched == limit
+                          ? commentIterator.getCursor().toWebSafeString()
+                          : null;
+
+    /* Compress on the fly, since the body is never held in memory as a whole. */
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    OutputStream responseStream = response.getOutputStream();
+    GZIPOutputStream gzipStream = null;
+    if (HttpCaching.acceptsGzip(request)) {
+      response.setHeader("Content-Encoding", "gzip");
+      gzipStream = new GZIPOutputStream(responseStream);
+      responseStream = gzipStream;
+    }
+
+    /* 
+     * One translation budget for the whole response, shared by every chunk.
+     * Once it is spent, remaining comments are sent untranslated rather than holding up the response.
+     */
+    long translationDeadline = translationExecutor.getDeadlineFromNow();
+
+    return new CommentPage(
+      eTag,
+      languageCode,
+      translationDeadline,
+      chunks,
+      nextCursor,
+      responseStream,
+      gzipStream);
+  }
+
+  /** 
+   * Read every comment of a page into chunks of up to streamChunkSize, buffered comments first.
+   * Datastore's copies of buffered comments are skipped, since they may not be removed from the buffer yet.
+   *
+   * @return how many comments datastore returned, including skipped ones.
+   */
+  private int fetchChunks(
+      List<Entity> bufferedEntities, QueryResultIterator<Entity> commentIterator, List<List<Entity>> chunks) {
+    HashSet<Key> bufferedKeys = new HashSet<Key>();
+    for (Entity entity : bufferedEntities) {
+      bufferedKeys.add(entity.getKey());
+    }
+    int commentsFetched = 0;
+    ArrayList<Entity> chunk = new ArrayList<Entity>(bufferedEntities);
+    try (Metrics.Timer timer = Metrics.DATASTORE.time("comments_page")) {
+      while (commentIterator.hasNext()) {
+        Entity entity = commentIterator.next();
+        commentsFetched++;
+        if (bufferedKeys.contains(entity.getKey())) {
+          continue;
+        }
+        if (chunk.size() >= streamChunkSize) {
+          chunks.add(chunk);
+          chunk = new ArrayList<Entity>();
+        }
+        chunk.add(entity);
+      }
+    }
+    if (!chunk.isEmpty()) {
+      chunks.add(chunk);
+    }
+    return commentsFetched;
+  }
+
+  /** 
+   * Translate and write the rest of a page, one chunk at a time, then finish the response.
+   * Each chunk is written on the I/O pool; no thread waits while it is translated.
+   * Stops early, without writing, once the request has timed out.
+   */
+  private CompletableFuture<Void> writeRemainingChunks(CommentPage page, AsyncDeadline deadline) {
+    if (!page.hasNextChunk()) {
+      deadline.runIfActive(page::finish);
+      return CompletableFuture.<Void>completedFuture(null);
+    }
+    return translateComments(page.nextChunk(), page.languageCode, page.translationDeadline)
+             .thenApplyAsync(comments -> deadline.runIfActive(() -> page.write(comments)), ioExecutor)
+             .thenCompose(written -> written
+                                       ? writeRemainingChunks(page, deadline)
+                                       : CompletableFuture.<Void>completedFuture(null));
+  }
+
+  /** 
+   * One comments response being streamed out. 
+   * Only used by one step of a request at a time, each step happening-after the last.
+   */
+  private final class CommentPage {
+    private final String eTag;
+    private final String languageCode;
+    /** ms since Epoch after which to stop waiting on translations. */
+    private final long translationDeadline;
+    /** Chunks of comments not yet written, in order. */
+    private final Iterator<List<Entity>> chunks;
+    /** Where the next page starts, or null if this is the last. */
+    private final String nextCursor;
+    private final Writer responseWriter;
+    private final JsonWriter jsonWriter;
+    /** Null if the response isn't compressed. */
+    private final GZIPOutputStream gzipStream;
+    private boolean allTranslated = true;
+
+    CommentPage(String eTag, String languageCode, long translationDeadline, List<List<Entity>> chunks,
+        String nextCursor, OutputStream responseStream, GZIPOutputStream gzipStream) throws IOException {
+      this.eTag = eTag;
+      this.languageCode = languageCode;
+      this.translationDeadline = translationDeadline;
+      this.chunks = chunks.iterator();
+      this.nextCursor = nextCursor;
+      this.gzipStream = gzipStream;
+      this.responseWriter = new OutputStreamWriter(responseStream, StandardCharsets.UTF_8);
+      this.jsonWriter = new JsonWriter(responseWriter);
+      jsonWriter.beginObject();
+      jsonWriter.name("comments").beginArray();
+    }
+
+    boolean hasNextChunk() {
+      return chunks.hasNext();
+    }
+
+    List<Entity> nextChunk() {
+      return chunks.next();
+    }
+
+    void write(List<Comment> comments) {
+      allTranslated &= writeComments(jsonWriter, comments);
     }
 
-    /* Use query to populate a list of Comment objects. */
-    ArrayList<Comment> comments = new ArrayList<Comment>();
+    /** End the JSON, and remember whether this response was fully translated. */
+    void finish() {
+      try {
+        jsonWriter.endArray();
+        jsonWriter.name("nextCursor").value(nextCursor);
+        jsonWriter.endObject();
+        jsonWriter.flush();
+        responseWriter.write("\n");
+        responseWriter.flush();
+        if (gzipStream != null) {
+          gzipStream.finish();
+        }
+      } catch (IOException writeFailed) {
+        throw new UncheckedIOException(writeFailed);
+      }
+
+      /* 
+       * The ETag was sent before we knew whether every translation would finish.
+       * If some didn't, remember that, so the client's copy isn't revalidated as current.
+       */
+      if (allTranslated) {
+        partialETags.remove(eTag);
+      } else {
+        partialETags.add(eTag);
+      }
+    }
+  }
+
+  /** 
+   * Get the newest comments for a project, translated, as doGet would send them without a startCursor.
+   * Unlike doGet the page is built in memory rather than streamed, so it suits small pages.
+   * Comments are read before this returns, so it must be called on a request thread.
+   * As in doGet, at most MAX_PAGE_SIZE and at least one comment are read.
+   *
+   * @return a future of the page, completed once translation finishes or the translation deadline passes.
+   */
+  CompletableFuture<FirstPage> getFirstPage(String projectId, int commentsCount, String languageCode) {
+    int limit = Math.max(1, Math.min(MAX_PAGE_SIZE, commentsCount));
+    long translationDeadline = translationExecutor.getDeadlineFromNow();
+    /* Comments not yet written to datastore come first, as in doGet. */
     ArrayList<Entity> commentEntities = new ArrayList<Entity>();
+    HashSet<Key> bufferedKeys = new HashSet<Key>();
+    if (writeBuffer != null) {
+      for (Entity entity : writeBuffer.getPending(projectId)) {
+        commentEntities.add(entity);
+        bufferedKeys.add(entity.getKey());
+      }
+    }
+
+    Query commentsQuery = new Query("Comment")
+                            .addSort("timestamp", Query.SortDirection.DESCENDING)
+                            .addFilter("projectId", Query.FilterOperator.EQUAL, projectId);
+    QueryResultIterator<Entity> commentIterator = DatastoreServiceFactory.getDatastoreService()
+      .prepare(commentsQuery)
+      .asQueryResultIterator(FetchOptions.Builder.withLimit(limit));
+    int commentsFetched = 0;
+    try (Metrics.Timer timer = Metrics.DATASTORE.time("comments_first_page")) {
+      while (commentIterator.hasNext()) {
+        Entity entity = commentIterator.next();
+        commentsFetched++;
+        if (!bufferedKeys.contains(entity.getKey())) {
+          commentEntities.add(entity);
+        }
+      }
+    }
+    String nextCursor = commentsFetched == limit
+                          ? commentIterator.getCursor().toWebSafeString()
+                          : null;
+
+    return translateComments(commentEntities, languageCode, translationDeadline)
+             .thenApply(comments -> new FirstPage(comments, nextCursor));
+  }
 
-    /* Add entities to a list for convenient access later */
-    for (Entity entity: commentResults.asIterable(options)) {
-      commentEntities.add(entity);
+  /**
+   * Get a project's comments posted after a time, newest first and translated, for /comments/stream to catch up on.
+   * At most MAX_COMMENTS_AFTER of the newest are returned.
+   * Comments are read before this returns, so it must be called on a request thread.
+   *
+   * @param after ms since Epoch.
+   * @return a future of the comments, completed once translation finishes or the translation deadline passes.
+   */
+  CompletableFuture<List<Comment>> getCommentsAfter(String projectId, long after, String languageCode) {
+    long translationDeadline = translationExecutor.getDeadlineFromNow();
+    /* Comments not yet written to datastore come first, as in doGet. */
+    ArrayList<Entity> commentEntities = new ArrayList<Entity>();
+    HashSet<Key> bufferedKeys = new HashSet<Key>();
+    if (writeBuffer != null) {
+      for (Entity entity : writeBuffer.getPending(projectId)) {
+        if ((long) entity.getProperty("timestamp") > after && commentEntities.size() < MAX_COMMENTS_AFTER) {
+          commentEntities.add(entity);
+          bufferedKeys.add(entity.getKey());
+        }
+      }
     }
 
-    /* Create a threadpool to perform multiple translations in parallel */
-    ExecutorService executor = Executors.newFixedThreadPool(10);
+    Query commentsQuery = new Query("Comment")
+                            .addSort("timestamp", Query.SortDirection.DESCENDING)
+                            .addFilter("projectId", Query.FilterOperator.EQUAL, projectId)
+                            .addFilter("timestamp", Query.FilterOperator.GREATER_THAN, after);
+    try (Metrics.Timer timer = Metrics.DATASTORE.time("comments_after")) {
+      for (Entity entity : DatastoreServiceFactory.getDatastoreService()
+             .prepare(commentsQuery)
+             .asIterable(FetchOptions.Builder.withLimit(MAX_COMMENTS_AFTER))) {
+        if (commentEntities.size() == MAX_COMMENTS_AFTER) {
+          break;
+        }
+        if (!bufferedKeys.contains(entity.getKey())) {
+          commentEntities.add(entity);
+        }
+      }
+    }
+
+    return translateComments(commentEntities, languageCode, translationDeadline);
+  }
+
+  /** 
+   * Get a string that changes whenever a project's comments are added or deleted.
+   * Comments are immutable and always newer than the rest, so the newest one identifies the whole set.
+   */
+  private String getLatestCommentVersion(DatastoreService datastore, String projectId) {
+    Query latestQuery = new Query("Comment")
+                          .addSort("timestamp", Query.SortDirection.DESCENDING)
+                          .addFilter("projectId", Query.FilterOperator.EQUAL, projectId)
+                          .addProjection(new PropertyProjection("timestamp", Long.class));
+    List<Entity> latest;
+    try (Metrics.Timer timer = Metrics.DATASTORE.time("latest_comment")) {
+      latest = datastore.prepare(latestQuery).asList(FetchOptions.Builder.withLimit(1));
+    }
+    if (latest.isEmpty()) {
+      return "none";
+    }
+    return latest.get(0).getProperty("timestamp") + ":" + latest.get(0).getKey().getId();
+  }
+
+  /** 
+   * Serialize comments directly onto the response, without building the whole JSON string.
+   * @return whether every comment was translated.
+   */
+  private boolean writeComments(JsonWriter jsonWriter, List<Comment> comments) {
+    boolean allTranslated = true;
+    try (Metrics.Timer timer = Metrics.SERIALIZATION.time("comments")) {
+      for (Comment comment : comments) {
+        Json.GSON.toJson(comment, Comment.class, jsonWriter);
+        allTranslated &= comment.isTranslated();
+      }
+    }
+    return allTranslated;
+  }
+
+  /** 
+   * Translate comment entities to a given language, using cached or stored translations where possible.
+   * Completes once translation finishes, or the translation deadline passes, without blocking meanwhile.
+   * Translations that finish after the deadline are still cached for later requests.
+   *
+   * @param translationDeadline ms since Epoch after which to stop waiting on translations.
+   * @return a future of comments in the same order as commentEntities.
+   *         Any comment that couldn't be translated keeps its original message, and is marked untranslated.
+   */
+  private CompletableFuture<List<Comment>> translateComments(
+      List<Entity> commentEntities, String languageCode, long translationDeadline) {
     /* A list to hold pending translations in the order they were added. */
     CompletableFuture<String>[] translationFutures = new CompletableFuture[commentEntities.size()];
 
-    /* Iterate entities and start a translation async for each */
+    /* Serve cached translations directly, and collect the rest to be translated. */
+    ArrayList<Integer> untranslatedIndices = new ArrayList<Integer>();
+    ArrayList<String> untranslatedMessages = new ArrayList<String>();
     for (int i = 0; i < commentEntities.size(); i++) {
       Entity entity = commentEntities.get(i);
-      
-      /* Lambda expression that captures the entity, performs translation, returns translated message. */
-      Supplier<String> translationTask = () -> {
-        String message = (String) entity.getProperty("message"); 
-        
-        /* A new translation service is created each time because Translate may not be threadsafe.*/
-        Translate translate = TranslateOptions.getDefaultInstance().getService();
-        Translation translation = translate.translate(
-          message,
-          Translate.TranslateOption.targetLanguage(languageCode == null ? "en" : languageCode)
-        );
-        return translation.getTranslatedText();
-      };
 
-      translationFutures[i] = CompletableFuture.supplyAsync(translationTask, executor);
+      String message = (String) entity.getProperty("message");
+
+      /* Comments already written in the requested language don't need translating. */
+      String sourceLanguageCode = (String) entity.getProperty("languageCode");
+      if (languageCode.equalsIgnoreCase(sourceLanguageCode)) {
+        translationFutures[i] = CompletableFuture.completedFuture(message);
+        continue;
+      }
+
+      /* 
+       * Popular languages were translated when the comment was posted, and came with the entity.
+       * Check them first, so the cache only counts lookups it could actually save a translation for.
+       */
+      String pretranslatedMessage = PretranslationQueue.getTranslation(entity, languageCode);
+      if (pretranslatedMessage != null) {
+        Metrics.TRANSLATION_LOOKUPS.get("stored").increment();
+        translationFutures[i] = CompletableFuture.completedFuture(pretranslatedMessage);
+        continue;
+      }
+
+      String cachedMessage = translationCache.get(entity.getKey().getId(), languageCode);
+      if (cachedMessage != null) {
+        translationFutures[i] = CompletableFuture.completedFuture(cachedMessage);
+        continue;
+      }
+
+      untranslatedIndices.add(i);
+      untranslatedMessages.add(message == null ? "" : message);
     }
 
-    /* Block until all translations are complete.
-     * This isn't ideal but I'm willing to bet traffic isn't a huge problem. 
-     * For this site, fast load for one >>> handle many users.
-     */
-    CompletableFuture.allOf(translationFutures).join();
+    /* Start one async translation per batch, rather than one per comment. */
+    for (List<Integer> batch : translationBatcher.partition(untranslatedMessages)) {
+      ArrayList<Entity> batchEntities = new ArrayList<Entity>();
+      ArrayList<String> batchMessages = new ArrayList<String>();
+      for (int batchIndex : batch) {
+        batchEntities.add(commentEntities.get(untranslatedIndices.get(batchIndex)));
+        batchMessages.add(untranslatedMessages.get(batchIndex));
+      }
 
-    /* Add translated queries for response */
-    for (int i = 0; i < commentEntities.size(); i++) {
-      Entity entity = commentEntities.get(i);
-      long id = entity.getKey().getId();
-      long timestamp = (long) entity.getProperty("timestamp");
-      String email = (String) entity.getProperty("email");
+      /* 
+       * Lambda expression that captures the batch, performs translation, returns translated messages in order.
+       * Results are cached from inside the task so that they are kept even if this request stops waiting.
+       */
+      Supplier<List<String>> translationTask = () -> {
+        List<String> translatedMessages = translator.translate(batchMessages, languageCode);
+        for (int j = 0; j < translatedMessages.size(); j++) {
+          translationCache.put(batchEntities.get(j).getKey().getId(), languageCode, translatedMessages.get(j));
+        }
+        return translatedMessages;
+      };
+      CompletableFuture<List<String>> batchFuture = translationExecutor.submit(translationTask);
 
-      String translatedMessage = "";
-      try {
-        translatedMessage = translationFutures[i].get();
-      } catch (Exception unexpected) {
-        /* Really the only thing that can cause an error here is 
-         * .get() being called before the task is complete.
-         * That is taken care of by the .join() block above.
-         */
+      /* Scatter the batch's results back to each comment's position. */
+      for (int j = 0; j < batch.size(); j++) {
+        final int positionInBatch = j;
+        translationFutures[untranslatedIndices.get(batch.get(j))] =
+          batchFuture.thenApply(translatedMessages -> translatedMessages.get(positionInBatch));
       }
+    }
 
-      Comment comment = new Comment(id, translatedMessage, projectId, timestamp, email);
-      comments.add(comment);
+    /* 
+     * Continue once all translations are complete, or the request's translation deadline passes.
+     * Anything unfinished by then is served untranslated.
+     */
+    return translationExecutor.whenAllDone(translationFutures, translationDeadline).thenApply(done -> {
+      /* Use translated messages to populate a list of Comment objects. */
+      ArrayList<Comment> comments = new ArrayList<Comment>();
+      for (int i = 0; i < commentEntities.size(); i++) {
+        /* Fall back to the original message if translation failed, was rejected, or timed out. */
+        CompletableFuture<String> translationFuture = translationFutures[i];
+        boolean translated = translationFuture.isDone() && !translationFuture.isCompletedExceptionally();
+        comments.add(toComment(commentEntities.get(i), translated ? translationFuture.join() : null));
+      }
+      return comments;
+    });
+  }
+
+  /** 
+   * Translate one new comment for streaming, without blocking or a deadline.
+   * The translation is cached, so it is reused by the next GET in that language.
+   *
+   * @return a future that always completes normally. If translation fails, it holds the untranslated comment.
+   */
+  private CompletableFuture<Comment> translateComment(Entity entity, String languageCode) {
+    String message = (String) entity.getProperty("message");
+    if (languageCode.equalsIgnoreCase((String) entity.getProperty("languageCode"))) {
+      return CompletableFuture.completedFuture(toComment(entity, message));
     }
 
-    /* Send JSON encoded list of comments. */
-    Gson gson = new Gson();
-    String json = gson.toJson(comments);
+    long id = entity.getKey().getId();
+    return translationExecutor.submit(() -> {
+      String translatedMessage = translator.translate(
+        Collections.singletonList(message == null ? "" : message), languageCode).get(0);
+      translationCache.put(id, languageCode, translatedMessage);
+      return translatedMessage;
+    }).handle((translatedMessage, translationFailed) -> toComment(entity, translatedMessage));
+  }
 
-    response.setContentType("application/json");
-    response.getWriter().println(json);
+  /** 
+   * Build the Comment served for an entity.
+   * @param translatedMessage the message in the requested language, or null to serve it untranslated.
+   */
+  private static Comment toComment(Entity entity, String translatedMessage) {
+    boolean translated = translatedMessage != null;
+    return new Comment(
+      entity.getKey().getId(),
+      translated ? translatedMessage : (String) entity.getProperty("message"),
+      translated,
+      (String) entity.getProperty("projectId"),
+      (long) entity.getProperty("timestamp"),
+      (String) entity.getProperty("email"));
   }
 
   /** 
    * Create a new comment for a given project. Requires a user to be authenticated.
-   * The comment can be in any language, since they are all translated on the get-step.
+   * The comment can be in any language; it is translated into popular languages in the background,
+   * and into any others on the get-step.
+   * Its language is detected and stored, to avoid translating it into its own language.
+   * With write-behind, detecting and counting the comment are left to the buffer's flush.
    */
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -177,29 +770,76 @@ public class CommentsServlet extends HttpServlet {
     long timestamp = System.currentTimeMillis();
     String email = request.getUserPrincipal().getName();
 
-    /* Create and set properties for a new comment in datastore. */
-    Entity commentEntity = new Entity("Comment");
+    /* 
+     * Create and set properties for a new comment in datastore.
+     * With write-behind, its key is allocated now, since it won't be written straight away.
+     */
+    Entity commentEntity = writeBuffer == null
+                             ? new Entity("Comment")
+                             : new Entity(writeBuffer.allocateKey());
     commentEntity.setProperty("message", message);
     commentEntity.setProperty("projectId", projectId);
     commentEntity.setProperty("timestamp", timestamp);
     commentEntity.setProperty("email", email);
     commentEntity.setProperty("displayName", displayName);
 
-    /* Save to datastore. */
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    datastore.put(commentEntity);
+    if (writeBuffer == null) {
+      /* 
+       * Detect the comment's language once, so reads in that language can skip translation.
+       * A failed detection just leaves it unknown, meaning the comment is always translated.
+       */
+      String languageCode = null;
+      try {
+        languageCode = translator.detectLanguage(message);
+      } catch (RuntimeException detectionFailed) {
+        /* Leave languageCode unset. */
+      }
+      commentEntity.setProperty("languageCode", languageCode);
+
+      DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+      try (Metrics.Timer timer = Metrics.DATASTORE.time("put_comment")) {
+        datastore.put(commentEntity);
+      }
+
+      /* Update the project's comment summary, shown on the projects page. */
+      try {
+        CommentCounter.increment(projectId, timestamp);
+      } catch (RuntimeException counterFailed) {
+        /* The comment itself is saved; only its project's count is off, until the next recount. */
+        logger.log(Level.WARNING, "Failed to count comment for project " + projectId, counterFailed);
+      }
+    } else {
+      /* Durably buffer it to be detected, saved and counted in the next batch. */
+      writeBuffer.add(commentEntity);
+    }
+
+    /* Translate into popular languages in the background, so reads don't have to. */
+    PretranslationQueue.enqueue(commentEntity.getKey(), writeBuffer == null ? 0 : writeBuffer.getWriteDelayMs());
+
+    /* Push to anyone watching this project, translated once per language they are watching in. */
+    for (String subscribedLanguageCode : commentHub.getLanguages(projectId)) {
+      translateComment(commentEntity, subscribedLanguageCode)
+        .thenAccept(comment -> commentHub.publish(comment, subscribedLanguageCode));
+    }
     
     /* Redirect client back to original project page. */
     String redirectUrl = "/project-detail.html?projectId=" + projectId; 
     response.sendRedirect(redirectUrl);
   }
 
-  /** Delete all comments for a given project. */
+  /** 
+   * Delete all comments for a given project, responding with {deleted: number}.
+   * Keys are streamed and deleted in fixed-size batches, a few batches at a time,
+   * so any number of comments can be deleted in constant memory.
+   */
   @Override
   public void doDelete(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    AsyncDatastoreService datastore = DatastoreServiceFactory.getAsyncDatastoreService();
 
     String projectId = request.getParameter("projectId");
+
+    /* Drop comments not written yet first, so a flush can't bring them back after the delete. */
+    int deleted = writeBuffer == null ? 0 : writeBuffer.removeProject(projectId);
     
     /* 
      * Get keys for all comments related to this projectId.
@@ -209,14 +849,46 @@ public class CommentsServlet extends HttpServlet {
                             .addFilter("projectId", Query.FilterOperator.EQUAL, projectId);
     PreparedQuery commentResults = datastore.prepare(commentsQuery);
 
-    /* Extract keys and delete. */
-    ArrayList<Key> commentKeys = new ArrayList<Key>();
-    for (Entity comment : commentResults.asIterable()) {
-        commentKeys.add(comment.getKey());
+    /* Deletes that have been sent but not yet confirmed, oldest first. */
+    ArrayDeque<Future<Void>> pendingDeletes = new ArrayDeque<Future<Void>>();
+    ArrayList<Key> batch = new ArrayList<Key>(DELETE_BATCH_SIZE);
+    try (Metrics.Timer timer = Metrics.DATASTORE.time("delete_comments")) {
+      for (Entity comment : commentResults.asIterable(FetchOptions.Builder.withChunkSize(DELETE_BATCH_SIZE))) {
+        batch.add(comment.getKey());
+        if (batch.size() == DELETE_BATCH_SIZE) {
+          sendDelete(datastore, pendingDeletes, batch);
+          deleted += batch.size();
+          batch = new ArrayList<Key>(DELETE_BATCH_SIZE);
+        }
+      }
+      if (!batch.isEmpty()) {
+        sendDelete(datastore, pendingDeletes, batch);
+        deleted += batch.size();
+      }
+      while (!pendingDeletes.isEmpty()) {
+        pendingDeletes.remove().get();
+      }
+    } catch (InterruptedException interrupted) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted deleting comments for project " + projectId, interrupted);
+    } catch (ExecutionException deleteFailed) {
+      throw new IOException("Failed to delete comments for project " + projectId, deleteFailed);
     }
 
-    /* Convert commentKeys to a normal array so it can be used by datastore.delete varargs. */
-    datastore.delete(commentKeys.toArray(new Key[commentKeys.size()]));
+    CommentCounter.reset(projectId);
+    ProjectCache.get(getServletContext()).invalidateCommentCounts();
+
+    response.setContentType("application/json");
+    response.getWriter().println("{\"deleted\":" + deleted + "}");
+  }
+
+  /** Send a batch of deletes, first waiting for the oldest delete if too many are in flight. */
+  private static void sendDelete(AsyncDatastoreService datastore, ArrayDeque<Future<Void>> pendingDeletes, List<Key> batch)
+      throws InterruptedException, ExecutionException {
+    if (pendingDeletes.size() == MAX_PARALLEL_DELETES) {
+      pendingDeletes.remove().get();
+    }
+    pendingDeletes.add(datastore.delete(batch));
   }
   
 }
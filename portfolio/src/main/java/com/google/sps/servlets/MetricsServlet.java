@@ -0,0 +1,72 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.metrics.Metrics;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** 
+ * Serves this instance's latency metrics in Prometheus text format, for scraping. Scrapers must send the
+ * configured token as "Authorization: Bearer <token>", since the metrics reveal how the service is used
+ * and where it is slow. With no token configured, metrics aren't served at all.
+ */
+@WebServlet("/metrics")
+public class MetricsServlet extends HttpServlet {
+  /** Init-param for the token scrapers must send. */
+  public static final String TOKEN_PARAM = "token";
+  /** System property overriding the init-param, so the token can be set in appengine-web.xml. */
+  public static final String TOKEN_PROPERTY = "sps.metricsToken";
+
+  private static final String BEARER_PREFIX = "Bearer ";
+
+  /** May be null, if no token is configured. */
+  private byte[] token;
+
+  @Override
+  public void init() throws ServletException {
+    String configured = System.getProperty(TOKEN_PROPERTY, getInitParameter(TOKEN_PARAM));
+    token = configured == null || configured.isEmpty() ? null : configured.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!isAuthorized(request)) {
+      response.setStatus(403);
+      return;
+    }
+
+    response.setContentType("text/plain; version=0.0.4");
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader("Cache-Control", "no-store");
+    Metrics.writePrometheus(response.getWriter());
+  }
+
+  /** Whether the request carries the configured token. Compared in constant time, so it can't be guessed bytewise. */
+  private boolean isAuthorized(HttpServletRequest request) {
+    String authorization = request.getHeader("Authorization");
+    if (token == null || authorization == null || !authorization.startsWith(BEARER_PREFIX)) {
+      return false;
+    }
+    byte[] sent = authorization.substring(BEARER_PREFIX.length()).trim().getBytes(StandardCharsets.UTF_8);
+    return MessageDigest.isEqual(token, sent);
+  }
+}
@@ -0,0 +1,66 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.translation.PretranslationQueue;
+import com.google.sps.translation.Translators;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Runs pretranslation tasks added by PretranslationQueue.enqueue, one comment per request.
+ * Only the task queue may call this.
+ */
+@WebServlet(PretranslationQueue.TASK_PATH)
+public class PretranslationServlet extends HttpServlet {
+  /** Set by App Engine on task queue requests, and stripped from any other request. */
+  private static final String QUEUE_NAME_HEADER = "X-AppEngine-QueueName";
+
+  private PretranslationQueue pretranslationQueue;
+
+  @Override
+  public void init() {
+    pretranslationQueue = PretranslationQueue.fromConfig(
+      getServletConfig(), Translators.fromConfig(getServletConfig()));
+  }
+
+  /** 
+   * Translate and store the comment given by param commentId. Failures respond 500, so the task is retried.
+   * A missing comment responds 503 if param retryIfMissing is set, so it is retried too,
+   * since it may still be in a write-behind buffer.
+   */
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (request.getHeader(QUEUE_NAME_HEADER) == null) {
+      response.setStatus(403);
+      return;
+    }
+
+    long commentId;
+    try {
+      commentId = Long.parseLong(request.getParameter(PretranslationQueue.COMMENT_ID_PARAM));
+    } catch (NumberFormatException badTask) {
+      /* Retrying wouldn't help, so report success to drop the task. */
+      return;
+    }
+    boolean found = pretranslationQueue.pretranslate(commentId);
+    if (!found && request.getParameter(PretranslationQueue.RETRY_IF_MISSING_PARAM) != null) {
+      response.setStatus(503);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.comments.CommentCounter;
+import com.google.sps.projects.ProjectCache;
+import com.google.sps.projects.ProjectEntities;
+import java.io.IOException;
+import java.util.ArrayList;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * One-shot migration of Project entities from Gson-encoded list properties to native ones,
+ * also backfilling each project's comment counter from its existing comments.
+ * Safe to run more than once, since already migrated entities are skipped and counts are recomputed. Admins only.
+ */
+@WebServlet("/admin/migrate-projects")
+public class ProjectMigrationServlet extends HttpServlet {
+  /** How many entities are written per datastore put. */
+  private static final int BATCH_SIZE = 100;
+
+  private UserService userService = UserServiceFactory.getUserService();
+
+  /** Migrate every legacy project, responding with how many were rewritten. */
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!userService.isUserLoggedIn() || !userService.isUserAdmin()) {
+      response.setStatus(403);
+      return;
+    }
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    ArrayList<Entity> batch = new ArrayList<Entity>();
+    int migrated = 0;
+
+    for (Entity entity : datastore.prepare(new Query("Project")).asIterable()) {
+      CommentCounter.recount(String.valueOf(entity.getKey().getId()));
+      if (!ProjectEntities.isLegacy(entity)) {
+        continue;
+      }
+      ProjectEntities.migrate(entity);
+      batch.add(entity);
+      if (batch.size() == BATCH_SIZE) {
+        datastore.put(batch);
+        migrated += batch.size();
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      datastore.put(batch);
+      migrated += batch.size();
+    }
+
+    /* Serve the new format's decoding from now on. */
+    ProjectCache.get(getServletContext()).invalidate();
+
+    response.setContentType("text/plain");
+    response.getWriter().println("Migrated " + migrated + " projects.");
+  }
+}
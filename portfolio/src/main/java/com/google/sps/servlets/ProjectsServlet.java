@@ -20,36 +20,71 @@ import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.EntityNotFoundException;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import com.google.sps.data.Project;
+import com.google.sps.http.CachedBody;
+import com.google.sps.http.HttpCaching;
+import com.google.sps.json.Json;
+import com.google.sps.metrics.Metrics;
+import com.google.sps.projects.ProjectCache;
+import com.google.sps.projects.ProjectEntities;
+import com.google.sps.projects.TagIndex;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Servlet that returns one or many projects.*/
+/** 
+ * Servlet that returns one or many projects.
+ * Projects are served from a shared in-memory ProjectCache rather than read from datastore per request.
+ */
 @WebServlet("/projects")
 public class ProjectsServlet extends HttpServlet {
+  /** How many search results are returned when no limit is given. */
+  private static final int DEFAULT_SEARCH_LIMIT = 20;
+  /** The most search results a client can ask for. */
+  private static final int MAX_SEARCH_LIMIT = 100;
 
-  /** Get one or many projects. (based on whether projectId query param present)*/
+  private ProjectCache projectCache;
+
+  @Override
+  public void init() throws ServletException {
+    projectCache = ProjectCache.get(getServletContext());
+  }
+
+  /** 
+   * Get one or many projects. (based on whether projectId query param present)
+   * Many projects can be filtered by one or more tag query params. By default a project matches
+   * if it has any of the tags; with tagMode=and it must have all of them.
+   * They can also be searched with a q query param, returning at most limit projects, best match first.
+   */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    String json = "";
+    CachedBody json;
     /** May be null */
     String projectId = request.getParameter("projectId");
+    /** May be null */
+    String[] tags = request.getParameterValues("tag");
+    /** May be null */
+    String searchQuery = request.getParameter("q");
 
     /** Presence of projectId flag determines whether to return one or many projects. */
-    if(projectId == null){
-        json = this.getAllProjectsJson();
+    if(projectId == null && (tags != null || searchQuery != null)){
+        this.sendMatchingProjects(
+            request, response, tags == null ? Collections.<String>emptyList() : Arrays.asList(tags), searchQuery);
+        return;
+    } else if(projectId == null){
+        json = projectCache.getSnapshot().getAllProjectsBody();
     } else {
         try {
-            json = this.getOneProjectJson(Long.parseLong(projectId));
+            json = getOneProjectJson(projectCache, Long.parseLong(projectId));
         } catch (Exception badRequest) {
             /** Client sent bad projectId */
             response.setStatus(404);
@@ -57,64 +92,86 @@ public class ProjectsServlet extends HttpServlet {
             return;
         }
     }
-    response.setContentType("application/json");
-    response.getWriter().println(json);
+    /** Sends 304 if the client's copy is current, and gzip if accepted. */
+    HttpCaching.writeJson(request, response, json);
   }
 
-  /* Get JSON for a single project by id. */
-  private String getOneProjectJson(long projectId) throws EntityNotFoundException {
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    Key projectKey = KeyFactory.createKey("Project", projectId);
-    Entity projectEntity = datastore.get(projectKey);
+  /** 
+   * Send projects matching tags and/or a search query, using the cached indexes.
+   * With both, search results are filtered to those with matching tags.
+   */
+  private void sendMatchingProjects(
+      HttpServletRequest request, HttpServletResponse response, List<String> tags, String searchQuery)
+      throws IOException {
+    boolean matchAll = "and".equals(request.getParameter("tagMode"));
+    int limit = DEFAULT_SEARCH_LIMIT;
+    try {
+        limit = Math.max(1, Math.min(MAX_SEARCH_LIMIT, Integer.parseInt(request.getParameter("limit"))));
+    } catch (NumberFormatException expectedIfNoLimit) {
+        /** Use the default limit. */
+    }
+    ProjectCache.Snapshot snapshot = projectCache.getSnapshot();
 
-    Gson gson = new Gson();
-    return gson.toJson(this.getProjectFromEntity(projectEntity));
-  }
+    /** Results only change when the projects do, so the ETag is derived from theirs without searching. */
+    String eTag = HttpCaching.getETag(
+        snapshot.getAllProjectsBody().getETag() + matchAll + tags + "\n" + searchQuery + "\n" + limit);
+    if (HttpCaching.checkNotModified(request, response, eTag)) {
+        return;
+    }
 
-  /** Get JSON for all projects. */
-  private String getAllProjectsJson() {
+    TagIndex tagIndex = snapshot.getTagIndex();
+    List<Project> projects = matchAll ? tagIndex.matchAll(tags) : tagIndex.matchAny(tags);
+
+    if (searchQuery != null) {
+        Set<Project> projectsWithTags = Collections.newSetFromMap(new IdentityHashMap<Project, Boolean>());
+        projectsWithTags.addAll(projects);
+
+        /** Search everything, since tag filtering happens afterwards and might drop some top results. */
+        List<Project> searchResults = snapshot.getSearchIndex().search(searchQuery, Integer.MAX_VALUE);
+        projects = new ArrayList<Project>();
+        for (Project project : searchResults) {
+            if (projects.size() == limit) {
+                break;
+            }
+            if (tags.isEmpty() || projectsWithTags.contains(project)) {
+                projects.add(project);
+            }
+        }
+    }
 
-    /** 
-     * Get projects from datastore. 
-    */
-    Query projectsQuery = new Query("Project");
+    /** The indexes hold projects without comment counts; serve the snapshot's counted copies. */
+    List<Project> countedProjects = new ArrayList<Project>(projects.size());
+    for (Project project : projects) {
+        countedProjects.add(snapshot.getProject(project.getId()));
+    }
+    projects = countedProjects;
 
-    /** Load query. */
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    PreparedQuery projectResults = datastore.prepare(projectsQuery);
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    try (Metrics.Timer timer = Metrics.SERIALIZATION.time("matching_projects")) {
+      Json.GSON.toJson(projects, response.getWriter());
+    }
+  }
 
-    /** Use query to populate a list of Project objects. */
-    ArrayList<Project> projects = new ArrayList<Project>();
-    for (Entity entity : projectResults.asIterable()) {
-        projects.add(this.getProjectFromEntity(entity));
+  /** 
+   * Get JSON for a single project by id.
+   * Projects added since the cache was loaded are read from datastore, and the cache is invalidated to pick them up.
+   */
+  static CachedBody getOneProjectJson(ProjectCache projectCache, long projectId) throws EntityNotFoundException {
+    CachedBody json = projectCache.getSnapshot().getProjectBody(projectId);
+    if (json != null) {
+      return json;
     }
 
-    Gson gson = new Gson();
-    return gson.toJson(projects);
-  }
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Key projectKey = KeyFactory.createKey("Project", projectId);
+    Entity projectEntity;
+    try (Metrics.Timer timer = Metrics.DATASTORE.time("get_project")) {
+      projectEntity = datastore.get(projectKey);
+    }
+    projectCache.invalidate();
 
-  /** Get a project class from a datastore entity. */
-  private Project getProjectFromEntity(Entity entity) {
-    Gson gson = new Gson();
-
-    long id = entity.getKey().getId();
-
-    String name = (String) entity.getProperty("name");
-    String description = (String) entity.getProperty("description");
-    /** The remaining properties are lists. GSON needs additional type information to properly decode these. */
-    List<String> tags = gson.fromJson(
-        (String) entity.getProperty("tags"), 
-        new TypeToken<ArrayList<String>>(){}.getType()
-    );
-    List<String> details = gson.fromJson(
-        (String) entity.getProperty("details"), 
-        new TypeToken<ArrayList<String>>(){}.getType()
-    );
-    List<Project.ProjectLink> links = gson.fromJson(
-        (String) entity.getProperty("links"), 
-        new TypeToken<ArrayList<Project.ProjectLink>>(){}.getType()
-    );
-
-    return new Project(id, name, description, tags, details, links);
+    /* Counts for this one project come in with the next cache load. */
+    return CachedBody.of(Json.GSON.toJson(ProjectEntities.getProject(projectEntity)));
   }
 }
@@ -0,0 +1,65 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.translation;
+
+import com.google.cloud.translate.Translate;
+import com.google.cloud.translate.TranslateOptions;
+import com.google.cloud.translate.Translation;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Translates using the Google Cloud Translation API.
+ * Cloud client services are thread-safe, so a single Translate service
+ * (and its credentials and HTTP transport) is built once and shared by every request.
+ */
+public final class CloudTranslator implements Translator {
+
+  /** Holder idiom, so the client is only built the first time it is needed. */
+  private static final class InstanceHolder {
+    private static final CloudTranslator INSTANCE =
+      new CloudTranslator(TranslateOptions.getDefaultInstance().getService());
+  }
+
+  private final Translate translate;
+
+  private CloudTranslator(Translate translate) {
+    this.translate = translate;
+  }
+
+  /** Get the process-wide translator. */
+  public static CloudTranslator getInstance() {
+    return InstanceHolder.INSTANCE;
+  }
+
+  @Override
+  public List<String> translate(List<String> texts, String targetLanguage) {
+    List<Translation> translations = translate.translate(
+      texts,
+      Translate.TranslateOption.targetLanguage(targetLanguage)
+    );
+
+    ArrayList<String> translatedTexts = new ArrayList<String>(translations.size());
+    for (Translation translation : translations) {
+      translatedTexts.add(translation.getTranslatedText());
+    }
+    return translatedTexts;
+  }
+
+  @Override
+  public String detectLanguage(String text) {
+    return translate.detect(text).getLanguage();
+  }
+}
@@ -0,0 +1,55 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.translation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A deterministic, offline translator for tests and load benchmarks.
+ * "Translates" by tagging each text with its target language, e.g. "[fr] hello",
+ * after sleeping for a fixed latency per call to imitate a network round trip.
+ * Every text is detected as english, which is what most real comments are.
+ */
+public final class FakeTranslator implements Translator {
+  /** Simulated round-trip time of one translate call, in ms. */
+  private final long latencyMs;
+
+  public FakeTranslator(long latencyMs) {
+    this.latencyMs = latencyMs;
+  }
+
+  @Override
+  public List<String> translate(List<String> texts, String targetLanguage) {
+    if (latencyMs > 0) {
+      try {
+        Thread.sleep(latencyMs);
+      } catch (InterruptedException interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    ArrayList<String> translatedTexts = new ArrayList<String>(texts.size());
+    for (String text : texts) {
+      translatedTexts.add("[" + targetLanguage + "] " + text);
+    }
+    return translatedTexts;
+  }
+
+  @Override
+  public String detectLanguage(String text) {
+    return "en";
+  }
+}
@@ -0,0 +1,206 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.translation;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Text;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.RetryOptions;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.sps.metrics.Metrics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletConfig;
+
+/**
+ * Translates new comments into popular languages in the background, right after they are posted.
+ * Translations are stored on the comment entity itself, so most reads never call Translate.
+ *
+ * Each new comment is handed to a push task, which App Engine runs as a request to /tasks/pretranslate.
+ * That way the datastore work runs on a request thread, where App Engine APIs are available,
+ * and is retried by the task queue if it fails.
+ * This is best-effort: if a comment can't be queued or translated, reads translate it on demand instead.
+ */
+public final class PretranslationQueue {
+  /** Init-param name, settable through web.xml or @WebServlet(initParams). */
+  public static final String LANGUAGES_PARAM = "translation.pretranslateLanguages";
+  /** Where the task queue sends comments to translate. */
+  public static final String TASK_PATH = "/tasks/pretranslate";
+  /** The task parameter holding the id of the comment to translate. */
+  public static final String COMMENT_ID_PARAM = "commentId";
+  /** The task parameter set when the comment may not be written yet, so a missing one should be retried. */
+  public static final String RETRY_IF_MISSING_PARAM = "retryIfMissing";
+
+  /** A comma separated list of ISO-639-1 codes. */
+  private static final String DEFAULT_LANGUAGES = "en,es,fr,zh,hi";
+  /** Attempts at a task before the comment is left to be translated on demand. */
+  private static final int MAX_TASK_RETRIES = 5;
+  /** Attempts at storing translations before giving up on a contended transaction. */
+  private static final int MAX_ATTEMPTS = 3;
+
+  /** Comment entity properties holding pre-computed translations are named this, then the language code. */
+  private static final String PROPERTY_PREFIX = "translated_";
+
+  private static final Logger logger = Logger.getLogger(PretranslationQueue.class.getName());
+
+  /** Languages every comment is translated into. */
+  private final List<String> languageCodes;
+  private final Translator translator;
+
+  public PretranslationQueue(List<String> languageCodes, Translator translator) {
+    this.languageCodes = Collections.unmodifiableList(new ArrayList<String>(languageCodes));
+    this.translator = translator;
+  }
+
+  /** Build a queue from servlet init-params, using defaults for any that are missing. */
+  public static PretranslationQueue fromConfig(ServletConfig config, Translator translator) {
+    String languages = config.getInitParameter(LANGUAGES_PARAM);
+    return new PretranslationQueue(
+      Arrays.asList((languages == null ? DEFAULT_LANGUAGES : languages).split("\\s*,\\s*")),
+      translator
+    );
+  }
+
+  /**
+   * Schedule translations for a new comment. Must be called on a request thread.
+   * Doesn't wait for the task to be added, and never throws, since pretranslation is only an optimization.
+   *
+   * @param commentKey     key of the Comment entity.
+   * @param writeDelayMs   how long until the comment should be in datastore, e.g. if it is write-behind buffered,
+   *                       or 0 if it already is. The task waits this long, and retries while the comment is missing.
+   */
+  public static void enqueue(Key commentKey, long writeDelayMs) {
+    try {
+      TaskOptions task = TaskOptions.Builder
+        .withUrl(TASK_PATH)
+        .param(COMMENT_ID_PARAM, String.valueOf(commentKey.getId()))
+        .retryOptions(RetryOptions.Builder.withTaskRetryLimit(MAX_TASK_RETRIES));
+      if (writeDelayMs > 0) {
+        task.countdownMillis(writeDelayMs).param(RETRY_IF_MISSING_PARAM, "true");
+      }
+      QueueFactory.getDefaultQueue().addAsync(task);
+    } catch (RuntimeException enqueueFailed) {
+      logger.log(Level.WARNING, "Failed to queue pretranslation of comment " + commentKey.getId(), enqueueFailed);
+    }
+  }
+
+  /**
+   * Get a translation stored on a comment entity by this queue.
+   *
+   * @return the translated message, or null if this language wasn't pre-translated.
+   */
+  public static String getTranslation(Entity commentEntity, String languageCode) {
+    Object translation = commentEntity.getProperty(PROPERTY_PREFIX + languageCode);
+    if (translation instanceof Text) {
+      return ((Text) translation).getValue();
+    }
+    return (String) translation;
+  }
+
+  /**
+   * Translate a comment into every popular language it isn't already stored in, and store the translations.
+   * Runs the task added by enqueue, on its request thread.
+   * Translations are stored in a transaction that rereads the comment,
+   * so one that was deleted meanwhile is not written back.
+   *
+   * @param commentId id of the Comment entity. A comment that doesn't exist is skipped.
+   * @return false if the comment doesn't exist (yet), or true if it was translated or needed no translating.
+   */
+  public boolean pretranslate(long commentId) {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Key commentKey = KeyFactory.createKey("Comment", commentId);
+    Entity commentEntity;
+    try (Metrics.Timer timer = Metrics.DATASTORE.time("get_comment")) {
+      commentEntity = datastore.get(commentKey);
+    } catch (EntityNotFoundException expectedIfDeletedOrUnwritten) {
+      return false;
+    }
+
+    /* Translate outside the transaction, so it isn't held open for the Translate calls. */
+    String message = (String) commentEntity.getProperty("message");
+    String sourceLanguageCode = (String) commentEntity.getProperty("languageCode");
+    if (message == null || message.isEmpty()) {
+      return true;
+    }
+    List<String> messages = Collections.singletonList(message);
+    ArrayList<String> targetLanguageCodes = new ArrayList<String>();
+    ArrayList<String> translatedMessages = new ArrayList<String>();
+    for (String languageCode : languageCodes) {
+      if (languageCode.equalsIgnoreCase(sourceLanguageCode) || getTranslation(commentEntity, languageCode) != null) {
+        continue;
+      }
+      try {
+        translatedMessages.add(translator.translate(messages, languageCode).get(0));
+        targetLanguageCodes.add(languageCode);
+      } catch (RuntimeException translationFailed) {
+        /* Skip this language; reads will translate it on demand. */
+      }
+    }
+
+    if (!targetLanguageCodes.isEmpty()) {
+      try (Metrics.Timer timer = Metrics.DATASTORE.time("store_pretranslations")) {
+        store(datastore, commentKey, targetLanguageCodes, translatedMessages);
+      }
+    }
+    return true;
+  }
+
+  /** Add translations to a comment, unless it has been deleted. */
+  private static void store(DatastoreService datastore, Key commentKey,
+      List<String> targetLanguageCodes, List<String> translatedMessages) {
+    for (int attempt = 1; ; attempt++) {
+      Transaction transaction = datastore.beginTransaction();
+      try {
+        Entity commentEntity;
+        try {
+          commentEntity = datastore.get(transaction, commentKey);
+        } catch (EntityNotFoundException expectedIfDeleted) {
+          return;
+        }
+
+        /* 
+         * Text since translations can run past the 1500 byte String limit,
+         * and unindexed since they're never queried on.
+         */
+        for (int i = 0; i < targetLanguageCodes.size(); i++) {
+          commentEntity.setUnindexedProperty(
+            PROPERTY_PREFIX + targetLanguageCodes.get(i), new Text(translatedMessages.get(i)));
+        }
+        datastore.put(transaction, commentEntity);
+        transaction.commit();
+        return;
+      } catch (ConcurrentModificationException contended) {
+        if (attempt == MAX_ATTEMPTS) {
+          throw contended;
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+  }
+}
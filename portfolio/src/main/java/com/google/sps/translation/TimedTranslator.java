@@ -0,0 +1,47 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.translation;
+
+import com.google.sps.metrics.Metrics;
+import java.util.List;
+
+/** Records the latency of every call to another Translator into Metrics.TRANSLATE, failed calls included. */
+public final class TimedTranslator implements Translator {
+  private final Translator translator;
+
+  public TimedTranslator(Translator translator) {
+    this.translator = translator;
+  }
+
+  @Override
+  public List<String> translate(List<String> texts, String targetLanguage) {
+    Metrics.Timer timer = Metrics.TRANSLATE.time("translate");
+    try {
+      return translator.translate(texts, targetLanguage);
+    } finally {
+      timer.close();
+    }
+  }
+
+  @Override
+  public String detectLanguage(String text) {
+    Metrics.Timer timer = Metrics.TRANSLATE.time("detect_language");
+    try {
+      return translator.detectLanguage(text);
+    } finally {
+      timer.close();
+    }
+  }
+}
@@ -0,0 +1,90 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.translation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.ServletConfig;
+
+/**
+ * Groups texts into batches that can each be sent in one Translate call.
+ * Batches are limited both by number of texts and by total UTF-8 size,
+ * since the Translate API rejects requests that are too large on either count.
+ */
+public final class TranslationBatcher {
+  /** Init-param names, settable through web.xml or @WebServlet(initParams). */
+  public static final String MAX_TEXTS_PARAM = "translation.batchSize";
+  public static final String MAX_BYTES_PARAM = "translation.batchBytes";
+
+  /** The Translate v2 API accepts at most 128 segments per request. */
+  private static final int DEFAULT_MAX_TEXTS = 128;
+  /** Google recommends keeping a single request under ~30K characters. */
+  private static final int DEFAULT_MAX_BYTES = 30000;
+
+  private final int maxTexts;
+  private final int maxBytes;
+
+  /**
+   * @param maxTexts most texts to put in one batch.
+   * @param maxBytes most UTF-8 bytes to put in one batch. A single text larger than this gets a batch of its own.
+   */
+  public TranslationBatcher(int maxTexts, int maxBytes) {
+    this.maxTexts = maxTexts;
+    this.maxBytes = maxBytes;
+  }
+
+  /** Build a batcher from servlet init-params, using defaults for any that are missing. */
+  public static TranslationBatcher fromConfig(ServletConfig config) {
+    String maxTexts = config.getInitParameter(MAX_TEXTS_PARAM);
+    String maxBytes = config.getInitParameter(MAX_BYTES_PARAM);
+    return new TranslationBatcher(
+      maxTexts == null ? DEFAULT_MAX_TEXTS : Integer.parseInt(maxTexts),
+      maxBytes == null ? DEFAULT_MAX_BYTES : Integer.parseInt(maxBytes)
+    );
+  }
+
+  /**
+   * Split texts into batches, preserving order.
+   * 
+   * @param texts the texts to be translated.
+   * @return batches of indices into texts. Every index appears in exactly one batch.
+   */
+  public List<List<Integer>> partition(List<String> texts) {
+    List<List<Integer>> batches = new ArrayList<List<Integer>>();
+    List<Integer> batch = new ArrayList<Integer>();
+    int batchBytes = 0;
+
+    for (int i = 0; i < texts.size(); i++) {
+      String text = texts.get(i);
+      int textBytes = text == null ? 0 : text.getBytes(StandardCharsets.UTF_8).length;
+
+      /* Start a new batch if this text wouldn't fit in the current one. */
+      if (!batch.isEmpty() && (batch.size() >= maxTexts || batchBytes + textBytes > maxBytes)) {
+        batches.add(batch);
+        batch = new ArrayList<Integer>();
+        batchBytes = 0;
+      }
+
+      batch.add(i);
+      batchBytes += textBytes;
+    }
+
+    if (!batch.isEmpty()) {
+      batches.add(batch);
+    }
+    return batches;
+  }
+}
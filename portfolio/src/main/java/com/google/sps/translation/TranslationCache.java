@@ -0,0 +1,106 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.translation;
+
+import com.google.sps.metrics.Metrics;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.servlet.ServletConfig;
+
+/**
+ * A size-bounded, expiring cache of translated comment messages.
+ * Comments can't be edited once posted, so a translation keyed by
+ * (comment id, target language) stays valid until it is evicted or expires.
+ * Hits and misses are counted in Metrics.TRANSLATION_LOOKUPS, as sources "cache" and "miss".
+ */
+public final class TranslationCache {
+  /** Init-param names, settable through web.xml or @WebServlet(initParams). */
+  public static final String MAX_ENTRIES_PARAM = "translation.cacheSize";
+  public static final String TTL_MS_PARAM = "translation.cacheTtlMs";
+
+  private static final int DEFAULT_MAX_ENTRIES = 10000;
+  private static final long DEFAULT_TTL_MS = 24 * 60 * 60 * 1000;
+
+  /** A cached translation, and when it stops being served. */
+  private static final class CachedTranslation {
+    private final String translatedText;
+    private final long expiresAt;
+
+    private CachedTranslation(String translatedText, long expiresAt) {
+      this.translatedText = translatedText;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  /** Access-ordered so the eldest entry is always the least recently used. Guarded by this. */
+  private final LinkedHashMap<String, CachedTranslation> entries;
+  private final long ttlMs;
+
+  /**
+   * @param maxEntries number of translations to hold before evicting the least recently used.
+   * @param ttlMs      how long a translation is served after being cached, in ms.
+   */
+  public TranslationCache(final int maxEntries, long ttlMs) {
+    this.ttlMs = ttlMs;
+    this.entries = new LinkedHashMap<String, CachedTranslation>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedTranslation> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /** Build a cache from servlet init-params, using defaults for any that are missing. */
+  public static TranslationCache fromConfig(ServletConfig config) {
+    String maxEntries = config.getInitParameter(MAX_ENTRIES_PARAM);
+    String ttlMs = config.getInitParameter(TTL_MS_PARAM);
+    return new TranslationCache(
+      maxEntries == null ? DEFAULT_MAX_ENTRIES : Integer.parseInt(maxEntries),
+      ttlMs == null ? DEFAULT_TTL_MS : Long.parseLong(ttlMs)
+    );
+  }
+
+  /** Get a cached translation, or null if there isn't a live one. */
+  public String get(long commentId, String languageCode) {
+    String key = getKey(commentId, languageCode);
+    CachedTranslation entry;
+    synchronized (this) {
+      entry = entries.get(key);
+      if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+        entries.remove(key);
+        entry = null;
+      }
+    }
+
+    if (entry == null) {
+      Metrics.TRANSLATION_LOOKUPS.get("miss").increment();
+      return null;
+    }
+    Metrics.TRANSLATION_LOOKUPS.get("cache").increment();
+    return entry.translatedText;
+  }
+
+  /** Cache a translation, replacing any existing one for the same comment and language. */
+  public void put(long commentId, String languageCode, String translatedText) {
+    CachedTranslation entry = new CachedTranslation(translatedText, System.currentTimeMillis() + ttlMs);
+    synchronized (this) {
+      entries.put(getKey(commentId, languageCode), entry);
+    }
+  }
+
+  private static String getKey(long commentId, String languageCode) {
+    return commentId + ":" + languageCode;
+  }
+}
@@ -0,0 +1,195 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.translation;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import javax.servlet.ServletConfig;
+
+/**
+ * A bounded, long-lived thread pool for running translations.
+ * One instance is created per servlet in init() and shut down in destroy(),
+ * so requests share threads instead of building (and leaking) a pool each.
+ * These aren't request threads, so tasks mustn't call App Engine APIs. Translate goes over native sockets instead,
+ * per url-stream-handler in appengine-web.xml.
+ */
+public final class TranslationExecutor {
+  /** Init-param names, settable through web.xml or @WebServlet(initParams). */
+  public static final String THREADS_PARAM = "translation.threads";
+  public static final String QUEUE_DEPTH_PARAM = "translation.queueDepth";
+  public static final String REJECTION_POLICY_PARAM = "translation.rejectionPolicy";
+  public static final String DEADLINE_MS_PARAM = "translation.deadlineMs";
+
+  private static final int DEFAULT_THREADS = 10;
+  private static final int DEFAULT_QUEUE_DEPTH = 200;
+  /** 
+   * Once the queue is full, skip translating rather than run it on the caller's thread,
+   * which would hold an I/O or container thread past the deadline. Those comments are served untranslated.
+   */
+  private static final String DEFAULT_REJECTION_POLICY = "abort";
+  private static final long DEFAULT_DEADLINE_MS = 3000;
+  /** How long destroy() waits for in-flight translations before interrupting them. */
+  private static final long SHUTDOWN_GRACE_MS = 5000;
+
+  private final ThreadPoolExecutor executor;
+  /** Fires deadlines for whenAllDone. Its tasks only cancel futures, so one thread is plenty. */
+  private final ScheduledThreadPoolExecutor deadlineTimer = new ScheduledThreadPoolExecutor(1, runnable -> {
+    Thread thread = new Thread(runnable, "translation-deadlines");
+    thread.setDaemon(true);
+    return thread;
+  });
+  /** Longest a single request will wait on its translations. */
+  private final long deadlineMs;
+
+  /**
+   * @param threads         maximum number of concurrent translations.
+   * @param queueDepth      number of translations that may wait for a thread.
+   * @param rejectionPolicy "abort" (skip translating) or "callerRuns" (run on the submitting thread,
+   *                        ignoring the deadline) once the queue is full.
+   * @param deadlineMs      per-request time budget for translations, in ms.
+   */
+  public TranslationExecutor(int threads, int queueDepth, String rejectionPolicy, long deadlineMs) {
+    this.executor = new ThreadPoolExecutor(
+      threads,
+      threads,
+      60, TimeUnit.SECONDS,
+      new ArrayBlockingQueue<Runnable>(queueDepth),
+      new TranslationThreadFactory(),
+      getRejectionHandler(rejectionPolicy)
+    );
+    /* Let idle threads die off so a quiet instance holds no translation threads. */
+    this.executor.allowCoreThreadTimeOut(true);
+    /* Most deadlines are cancelled because translations finished first; don't keep them queued. */
+    this.deadlineTimer.setRemoveOnCancelPolicy(true);
+    this.deadlineMs = deadlineMs;
+  }
+
+  /** Build an executor from servlet init-params, using defaults for any that are missing. */
+  public static TranslationExecutor fromConfig(ServletConfig config) {
+    return new TranslationExecutor(
+      getIntParameter(config, THREADS_PARAM, DEFAULT_THREADS),
+      getIntParameter(config, QUEUE_DEPTH_PARAM, DEFAULT_QUEUE_DEPTH),
+      config.getInitParameter(REJECTION_POLICY_PARAM) == null
+        ? DEFAULT_REJECTION_POLICY
+        : config.getInitParameter(REJECTION_POLICY_PARAM),
+      getIntParameter(config, DEADLINE_MS_PARAM, (int) DEFAULT_DEADLINE_MS)
+    );
+  }
+
+  /**
+   * Run a task on the shared pool.
+   * If the pool rejects the task, the returned future is completed exceptionally
+   * rather than throwing, so callers can treat it like any other failed translation.
+   */
+  public <T> CompletableFuture<T> submit(Supplier<T> task) {
+    try {
+      return CompletableFuture.supplyAsync(task, executor);
+    } catch (RejectedExecutionException rejected) {
+      CompletableFuture<T> failed = new CompletableFuture<T>();
+      failed.completeExceptionally(rejected);
+      return failed;
+    }
+  }
+
+  /**
+   * Get the time at which a request starting now should stop waiting on translations.
+   *
+   * @return a deadline in ms since Epoch, to be passed to whenAllDone.
+   */
+  public long getDeadlineFromNow() {
+    return System.currentTimeMillis() + deadlineMs;
+  }
+
+  /**
+   * Get a future that completes once all futures finish, but no later than the given deadline.
+   * Nothing blocks meanwhile: the deadline is kept by a timer rather than a waiting thread.
+   * Futures still pending once the deadline passes are cancelled, and so will never be read.
+   * Cancelling a future derived from a task doesn't stop the task itself,
+   * so a task that caches its own result still does so after the deadline.
+   *
+   * @param deadline ms since Epoch, from getDeadlineFromNow. May already have passed.
+   * @return a future that always completes normally. Individual failures are left for the caller to read.
+   */
+  public CompletableFuture<Void> whenAllDone(CompletableFuture<?>[] futures, long deadline) {
+    CompletableFuture<Void> allDone = CompletableFuture.allOf(futures).handle((ignored, anyFailed) -> null);
+    if (allDone.isDone()) {
+      return allDone;
+    }
+
+    CompletableFuture<Void> doneOrExpired = new CompletableFuture<Void>();
+    ScheduledFuture<?> expiry = deadlineTimer.schedule(() -> {
+      for (CompletableFuture<?> future : futures) {
+        future.cancel(true);
+      }
+      doneOrExpired.complete(null);
+    }, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    allDone.thenRun(() -> {
+      expiry.cancel(false);
+      doneOrExpired.complete(null);
+    });
+    return doneOrExpired;
+  }
+
+  /** Stop accepting work and drain the pool, interrupting anything still running after a grace period. */
+  public void shutdown() {
+    deadlineTimer.shutdownNow();
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(SHUTDOWN_GRACE_MS, TimeUnit.MILLISECONDS)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException interrupted) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static RejectedExecutionHandler getRejectionHandler(String rejectionPolicy) {
+    switch (rejectionPolicy) {
+      case "abort":
+        return new ThreadPoolExecutor.AbortPolicy();
+      case "callerRuns":
+        return new ThreadPoolExecutor.CallerRunsPolicy();
+      default:
+        throw new IllegalArgumentException("Unknown translation rejection policy: " + rejectionPolicy);
+    }
+  }
+
+  private static int getIntParameter(ServletConfig config, String name, int defaultValue) {
+    String value = config.getInitParameter(name);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  /** Names threads so translation work is easy to spot in thread dumps, and keeps them daemon. */
+  private static final class TranslationThreadFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "translation-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,40 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.translation;
+
+import java.util.List;
+
+/**
+ * Translates text between languages.
+ * Implementations must be safe to share between threads, since one instance serves all requests.
+ */
+public interface Translator {
+  /**
+   * Translate texts into a single target language.
+   *
+   * @param texts          texts in any language.
+   * @param targetLanguage ISO-639-1 code of the language to translate into.
+   * @return translated texts, in the same order as texts.
+   */
+  List<String> translate(List<String> texts, String targetLanguage);
+
+  /**
+   * Guess which language a text is written in.
+   *
+   * @param text text in any language.
+   * @return ISO-639-1 code of the detected language.
+   */
+  String detectLanguage(String text);
+}
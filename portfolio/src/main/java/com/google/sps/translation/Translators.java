@@ -0,0 +1,52 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.translation;
+
+import javax.servlet.ServletConfig;
+
+/** Picks the Translator servlets should use. */
+public final class Translators {
+  /** Init-param names, settable through web.xml or @WebServlet(initParams). */
+  public static final String TRANSLATOR_PARAM = "translation.translator";
+  public static final String FAKE_LATENCY_MS_PARAM = "translation.fakeLatencyMs";
+  /**
+   * System properties that override the init-params above for every servlet,
+   * so tests and benchmarks can swap translators without editing servlet config.
+   */
+  public static final String TRANSLATOR_PROPERTY = "sps.translator";
+  public static final String FAKE_LATENCY_MS_PROPERTY = "sps.fakeTranslatorLatencyMs";
+
+  private Translators() {}
+
+  /**
+   * Get the translator chosen by config: "cloud" (the default) for the shared Cloud Translation client,
+   * or "fake" for an offline FakeTranslator. Either way, its calls are timed into Metrics.TRANSLATE.
+   */
+  public static Translator fromConfig(ServletConfig config) {
+    return new TimedTranslator(getUntimed(config));
+  }
+
+  private static Translator getUntimed(ServletConfig config) {
+    String translator = System.getProperty(TRANSLATOR_PROPERTY, config.getInitParameter(TRANSLATOR_PARAM));
+    if (translator == null || translator.equals("cloud")) {
+      return CloudTranslator.getInstance();
+    }
+    if (translator.equals("fake")) {
+      String latencyMs = System.getProperty(FAKE_LATENCY_MS_PROPERTY, config.getInitParameter(FAKE_LATENCY_MS_PARAM));
+      return new FakeTranslator(latencyMs == null ? 0 : Long.parseLong(latencyMs));
+    }
+    throw new IllegalArgumentException("Unknown translator: " + translator);
+  }
+}
@@ -1,10 +1,25 @@
 
+/** How long to wait before polling again after a failed poll, in ms. Doubles on each failure in a row. */
+const POLL_RETRY_MS = 1000;
+/** The longest wait between failed polls, in ms. */
+const MAX_POLL_RETRY_MS = 60 * 1000;
+
 /**
  * Handle displaying (and maintaining state for) comments on individual projects.
  */
 export class Comment {
     /** A list of all comments currently being displayed. */
     static comments = [];
+    /**
+     * Where the next page of comments starts, or null if all are loaded.
+     * @type {?string}
+     */
+    static nextCursor = null;
+    /**
+     * Stops polling for comments posted since the page loaded, or null if not subscribed.
+     * @type {?AbortController}
+     */
+    static subscription = null;
 
     /** Template element */
     static template = document.querySelector("#comment-template");
@@ -50,7 +65,11 @@ export class Comment {
 
     /**
      * JSON data for a comment.
-     * @typedef {{id: string, message: string, projectId: string, timestamp: number, displayName: string}} CommentData
+     * @typedef {{id: string, message: string, translated: boolean, projectId: string, timestamp: number, displayName: string}} CommentData
+     */
+    /**
+     * A page of comments, as sent by the server.
+     * @typedef {{comments: CommentData[], nextCursor: ?string}} CommentPage
      */
     /** 
      * Add all comments to the UI, replacing any existing.
@@ -60,13 +79,112 @@ export class Comment {
     static populateAll(comments){
         Comment.container.innerHTML = "";
         Comment.comments = [];
+        Comment.append(comments);
+    }
 
+    /** 
+     * Add comments to the UI, after any existing.
+     * @param {CommentData[]} comments
+     * @return {undefined}
+     */
+    static append(comments){
         for(let comment of comments){
             const {id, message, projectId, timestamp, displayName} = comment;
             Comment.comments.push(new Comment(id, message, projectId, timestamp, displayName));
         }
     }
 
+    /** 
+     * Add a newly posted comment to the UI, before any existing.
+     * @param {CommentData} comment
+     * @return {undefined}
+     */
+    static prepend(comment){
+        /** A poll can repeat a comment that was already loaded. */
+        if(Comment.comments.some(existing => existing.id === comment.id)){
+            return;
+        }
+        const {id, message, projectId, timestamp, displayName} = comment;
+        const newComment = new Comment(id, message, projectId, timestamp, displayName);
+        Comment.container.prepend(newComment.node);
+        Comment.comments.unshift(newComment);
+        document.querySelector("#delete-comments").classList.remove("hidden");
+    }
+
+    /**
+     * Show comments as they are posted, translated to languageCode, until subscribed again.
+     * Replaces any previous subscription, such as one in another language.
+     * @return {undefined}
+     */
+    static subscribe(projectId, languageCode){
+        if(Comment.subscription !== null){
+            Comment.subscription.abort();
+        }
+        Comment.subscription = new AbortController();
+        /** Catch up from the newest comment shown, or from now if there are none. */
+        const after = Comment.comments.length > 0 ? Comment.comments[0].timestamp : null;
+        Comment.poll(projectId, languageCode, after, Comment.subscription.signal);
+    }
+
+    /**
+     * Long-poll /comments/stream until aborted, showing comments as they arrive.
+     * Polling pauses while the page is hidden, and catches up once it is shown again.
+     * @param {?number} after Only show comments newer than this, in ms since Epoch. Null for from now.
+     * @param {AbortSignal} signal
+     * @return {Promise<undefined>}
+     */
+    static async poll(projectId, languageCode, after, signal){
+        let retryMs = POLL_RETRY_MS;
+        while(!signal.aborted){
+            if(document.hidden){
+                await Comment.untilVisible(signal);
+                continue;
+            }
+            try {
+                const afterParam = after === null ? "" : `&after=${after}`;
+                const response = await fetch(`/comments/stream?projectId=${projectId}&languageCode=${languageCode}${afterParam}`, {signal});
+                if(!response.ok){
+                    throw new Error(`Polling comments failed with status ${response.status}`);
+                }
+                /** @type {{comments: CommentData[], after: number}} */
+                const update = await response.json();
+
+                /** Comments come newest first, so prepend the oldest first. */
+                for(let comment of update.comments.reverse()){
+                    Comment.prepend(comment);
+                }
+                after = update.after;
+                retryMs = POLL_RETRY_MS;
+            } catch(error){
+                if(signal.aborted){
+                    return;
+                }
+                await new Promise(resolve => setTimeout(resolve, retryMs));
+                retryMs = Math.min(2 * retryMs, MAX_POLL_RETRY_MS);
+            }
+        }
+    }
+
+    /**
+     * Wait until the page is shown, or the signal aborts.
+     * @param {AbortSignal} signal
+     * @return {Promise<undefined>}
+     */
+    static untilVisible(signal){
+        return new Promise(resolve => {
+            const done = () => {
+                if(document.hidden && !signal.aborted){
+                    return;
+                }
+                document.removeEventListener("visibilitychange", done);
+                signal.removeEventListener("abort", done);
+                resolve();
+            };
+            document.addEventListener("visibilitychange", done);
+            signal.addEventListener("abort", done);
+        });
+    }
+
     /**
      * Load comments from the server, then display.
      * @return {Promise<undefined>}
@@ -74,8 +192,16 @@ export class Comment {
     static async loadAll(projectId, commentsCount, languageCode){
         /** Get comments for the current project. */
         const response = await fetch(`/comments?projectId=${projectId}&commentsCount=${commentsCount}&languageCode=${languageCode}`);
-        /** @type {CommentData} */
-        const comments = await response.json();
+        Comment.show(await response.json());
+    }
+
+    /**
+     * Display a first page of comments, replacing any existing.
+     * @param {CommentPage} page
+     * @return {undefined}
+     */
+    static show(page){
+        const {comments, nextCursor} = page;
 
         /** Only show delete comments button if comments exist. */
         const deleteCommentsFormNode = document.querySelector("#delete-comments");
@@ -86,6 +212,40 @@ export class Comment {
         }
 
         Comment.populateAll(comments);
+        Comment.setNextCursor(nextCursor);
+    }
+
+    /**
+     * Load the page of comments after those displayed, then add them to the UI.
+     * The server resumes from the stored cursor, so earlier comments aren't fetched again.
+     * @return {Promise<undefined>}
+     */
+    static async loadMore(projectId, commentsCount, languageCode){
+        if(Comment.nextCursor === null){
+            return;
+        }
+        const response = await fetch(`/comments?projectId=${projectId}&commentsCount=${commentsCount}&languageCode=${languageCode}&startCursor=${encodeURIComponent(Comment.nextCursor)}`);
+        /** @type {CommentPage} */
+        const {comments, nextCursor} = await response.json();
+
+        Comment.append(comments);
+        Comment.setNextCursor(nextCursor);
+    }
+
+    /**
+     * Store where the next page starts, and only show the load more button if there is one.
+     * @param {?string} nextCursor
+     * @return {undefined}
+     */
+    static setNextCursor(nextCursor){
+        Comment.nextCursor = nextCursor === undefined ? null : nextCursor;
+
+        const loadMoreNode = document.querySelector("#load-more");
+        if(Comment.nextCursor !== null){
+            loadMoreNode.classList.remove("hidden");
+        } else {
+            loadMoreNode.classList.add("hidden");
+        }
     }
 
     /** Delete all comments for this project, then reload. */
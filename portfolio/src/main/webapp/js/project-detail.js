@@ -22,15 +22,12 @@ let commentsCount = 5;
  */
 let languageCode = "en";
 
-/** Load data about this project from the server and populate UI items. */
-async function populateDetails() {
-    const response = await fetch(`/projects?projectId=${projectId}`);
-    /**
-    * All data about the current project.
-    * @type {{id: string, name: string, description: string, detail: string[], tags: string[]}}
-    */
-    const project = await response.json();
-
+/**
+ * Populate UI items with data about this project.
+ * @param {{id: string, name: string, description: string, detail: string[], tags: string[]}} project
+ *     All data about the current project.
+ */
+function populateDetails(project) {
     console.assert(project !== undefined);
 
     /** Fill in information for this project. */
@@ -87,17 +84,17 @@ document.querySelector("#delete-comments").addEventListener("click", async () =>
 const formNode = document.querySelector("#new-comment");
 const authButtonNode = document.querySelector("#auth-button");
 
-/** Get user's auth state. Only show form if logged in. */
-async function initializeCommentForm() {
-    const response = await fetch(`/auth?redirectUrl=${window.location.href}`);
-    const json = await response.json();
-
-    if(response.status === 401){
+/**
+ * Show the user's auth state. Only show form if logged in.
+ * @param {{loginUrl: string}|{logoutUrl: string}} json As sent by /auth.
+ */
+function initializeCommentForm(json) {
+    if(json.loginUrl !== undefined){
         // User is not logged in.
         authButtonNode.href = json.loginUrl;
         authButtonNode.innerHTML = "Login to comment";
         formNode.classList.add("hidden");
-    } else if (response.status === 200) {
+    } else {
         // User is logged in.
         authButtonNode.href = json.logoutUrl;
         authButtonNode.innerHTML = "Logout";
@@ -120,6 +117,9 @@ function getCommentButtonClickHandler (newCommentCount){
 document.querySelector("#show-5").addEventListener("click", getCommentButtonClickHandler(5));
 document.querySelector("#show-15").addEventListener("click", getCommentButtonClickHandler(15));
 document.querySelector("#show-all").addEventListener("click", getCommentButtonClickHandler(undefined));
+document.querySelector("#load-more").addEventListener("click", () => {
+    Comment.loadMore(projectId, commentsCount, languageCode);
+});
 
 /** Add language options. */
 const languageSelectNode = document.querySelector("#set-language");
@@ -133,10 +133,26 @@ for(let language of languages) {
 }
 languageSelectNode.addEventListener("change", e => {
     languageCode = e.currentTarget.value;
-    Comment.loadAll(projectId, commentsCount, languageCode);
+    Comment.loadAll(projectId, commentsCount, languageCode)
+        .then(() => Comment.subscribe(projectId, languageCode));
 });
 
-Comment.loadAll(projectId, commentsCount, languageCode);
-initializeCommentForm();
-populateDetails();
+/**
+ * Load the project, its first comments and the user's auth state from the server in one request,
+ * then populate the page.
+ */
+async function bootstrap() {
+    const response = await fetch(`/bootstrap?projectId=${projectId}&commentsCount=${commentsCount}&languageCode=${languageCode}&redirectUrl=${encodeURIComponent(window.location.href)}`);
+    /** @type {{auth: Object, project: Object, comments: CommentPage}} */
+    const {auth, project, comments} = await response.json();
+
+    Comment.show(comments);
+    initializeCommentForm(auth);
+    populateDetails(project);
+
+    /** Keep the list current without reloading, now there is a project to watch. */
+    Comment.subscribe(projectId, languageCode);
+}
+
+bootstrap();
 
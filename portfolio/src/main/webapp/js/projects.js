@@ -57,8 +57,8 @@ class Tag {
         this.selected = !this.selected;
         this.render();
 
-        /** Rerender projects if tag selection is changed */
-        Project.populateAll();
+        /** Reload projects if tag selection is changed */
+        Project.loadAndPopulateAll();
     }
 
     /** Add all tags to the UI, replacing all existing. */
@@ -80,7 +80,7 @@ class Tag {
 class Project {
     /** All projects currently being displayed. */
     static projects = [];
-    /** Raw data for all projects. This will be loaded from the server.*/
+    /** Raw data for projects matching the selected tags. This will be loaded from the server.*/
     static projectData = [];
     /** Template element */
     static template = document.querySelector("#project-template");
@@ -92,8 +92,10 @@ class Project {
      * @param {string} name
      * @param {string} description
      * @param {string[]} tags
+     * @param {number} commentCount
+     * @param {number=} lastCommentAt ms since Epoch, absent if there are no comments.
      */
-    constructor(id, name, description, tags){
+    constructor(id, name, description, tags, commentCount, lastCommentAt){
         /** Get root HTML node */
         this.node = Project.template.content.cloneNode(true).querySelector(".project");
 
@@ -105,6 +107,10 @@ class Project {
         this.description = description;
         /** @private @const {string[]} */
         this.tags = tags;
+        /** @private @const {number} */
+        this.commentCount = commentCount;
+        /** @private @const {number|undefined} */
+        this.lastCommentAt = lastCommentAt;
 
         this.render();
         
@@ -121,6 +127,13 @@ class Project {
         this.node.querySelector(".name").href = `/project-detail.html?projectId=${this.id}`;
         this.node.querySelector(".description").innerHTML = this.description;
 
+        /** Show how active the discussion is, if there is one. */
+        const commentCount = this.node.querySelector(".comment-count");
+        if (this.commentCount > 0){
+            commentCount.innerText = `${this.commentCount} comment${this.commentCount === 1 ? "" : "s"}`
+                + `, latest ${new Date(this.lastCommentAt).toLocaleDateString()}`;
+        }
+
         /** Show a list of all tags this project has. */
         const tagsContainer = this.node.querySelector(".tags");
         const tagTemplate = tagsContainer.querySelector(".project-tag-template");
@@ -146,27 +159,27 @@ class Project {
         Project.container.innerHTML = "";
         Project.projects = [];
 
-        const tagsMap = Tag.tags;
-        const noTagsSelected = ![...tagsMap.values()].some(tag => tag.selected === true);
-
+        /** The server has already filtered to projects with any selected tag. */
         for(let project of Project.projectData){
-            const {id, name, description, tags} = project;
-            /**
-             * Display a project if either
-                (1) no tags selected, or
-                (2) project contains any selected tag (logical OR)
-             */
-             /** Naively check tag membership right now, efficiency not a big problem. */
-             const tagIncluded = tags.some(tag => tagsMap.get(tag).selected === true);
-            if (noTagsSelected || tagIncluded){
-                Project.projects.push(name, new Project(id, name, description, tags));
-            }
+            const {id, name, description, tags, commentCount, lastCommentAt} = project;
+            Project.projects.push(name, new Project(id, name, description, tags, commentCount, lastCommentAt));
         }
     }
     
-    /** Load projects from server, then populate to UI */
+    /**
+     * Load projects from server, then populate to UI.
+     * Displays a project if either
+     *  (1) no tags selected, or
+     *  (2) project contains any selected tag (logical OR)
+     */
     static async loadAndPopulateAll() {
-        const response = await fetch('/projects');
+        const query = new URLSearchParams();
+        for(let tag of Tag.tags.values()){
+            if(tag.selected){
+                query.append("tag", tag.name);
+            }
+        }
+        const response = await fetch(`/projects?${query}`);
         Project.projectData = await response.json();
         Project.populateAll();
     }
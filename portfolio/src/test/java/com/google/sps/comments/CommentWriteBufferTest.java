@@ -0,0 +1,159 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.comments;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.translation.FakeTranslator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class CommentWriteBufferTest {
+  /** Long enough that the timer never flushes during a test; tests flush by hand. */
+  private static final long FLUSH_INTERVAL_MS = 60 * 60 * 1000;
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File logFile;
+
+  @Before
+  public void setUp() throws IOException {
+    helper.setUp();
+    logFile = new File(folder.getRoot(), "comments.log");
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  /** Open a buffer on the test's log. Opening another on the same log imitates a restart. */
+  private CommentWriteBuffer open() throws IOException {
+    return new CommentWriteBuffer(logFile, FLUSH_INTERVAL_MS, new FakeTranslator(0));
+  }
+
+  private static Entity add(CommentWriteBuffer buffer, String projectId, long timestamp) throws IOException {
+    Entity comment = new Entity(buffer.allocateKey());
+    comment.setProperty("message", "Comment at " + timestamp);
+    comment.setProperty("projectId", projectId);
+    comment.setProperty("timestamp", timestamp);
+    comment.setProperty("email", "user@example.com");
+    comment.setProperty("displayName", "User");
+    buffer.add(comment);
+    return comment;
+  }
+
+  private static long getCount(String projectId) {
+    CommentCounter.Summary summary = CommentCounter.getAll().get(projectId);
+    return summary == null ? 0 : summary.getCount();
+  }
+
+  @Test
+  public void flushWritesCountsAndDetectsLanguage() throws Exception {
+    CommentWriteBuffer buffer = open();
+    Entity comment = add(buffer, "1", 100);
+
+    buffer.flush();
+
+    Entity written = DatastoreServiceFactory.getDatastoreService().get(comment.getKey());
+    Assert.assertEquals("en", written.getProperty("languageCode"));
+    Assert.assertEquals(1, getCount("1"));
+    Assert.assertTrue(buffer.getPending("1").isEmpty());
+  }
+
+  @Test
+  public void pendingCommentsAreReplayed() throws Exception {
+    CommentWriteBuffer buffer = open();
+    Entity comment = add(buffer, "1", 100);
+
+    CommentWriteBuffer restarted = open();
+
+    Assert.assertEquals(1, restarted.getPending("1").size());
+    Assert.assertEquals(comment.getKey(), restarted.getPending("1").get(0).getKey());
+  }
+
+  @Test
+  public void flushLeavesOnlyCommentsStillPendingInTheLog() throws Exception {
+    CommentWriteBuffer buffer = open();
+    add(buffer, "1", 100);
+    buffer.flush();
+    Entity later = add(buffer, "1", 200);
+
+    CommentWriteBuffer restarted = open();
+
+    List<Entity> replayed = restarted.getPending("1");
+    Assert.assertEquals(1, replayed.size());
+    Assert.assertEquals(later.getKey(), replayed.get(0).getKey());
+  }
+
+  @Test
+  public void removedProjectIsNotReplayed() throws Exception {
+    CommentWriteBuffer buffer = open();
+    Entity flushed = add(buffer, "1", 100);
+    buffer.flush();
+    add(buffer, "1", 200);
+    Entity otherProject = add(buffer, "2", 300);
+
+    Assert.assertEquals(1, buffer.removeProject("1"));
+    DatastoreServiceFactory.getDatastoreService().delete(flushed.getKey());
+    CommentWriteBuffer restarted = open();
+    restarted.flush();
+
+    Assert.assertTrue(restarted.getPending("1").isEmpty());
+    try {
+      DatastoreServiceFactory.getDatastoreService().get(flushed.getKey());
+      Assert.fail("Deleted comment was written back.");
+    } catch (EntityNotFoundException expected) {
+      /* Stays deleted. */
+    }
+    DatastoreServiceFactory.getDatastoreService().get(otherProject.getKey());
+  }
+
+  @Test
+  public void replayedCommentsAreNotCountedTwice() throws Exception {
+    CommentWriteBuffer buffer = open();
+    add(buffer, "1", 100);
+    /* Imitate a crash after the flush wrote and counted the comment, but before the log was rewritten. */
+    File unflushedLog = new File(folder.getRoot(), "unflushed.log");
+    Files.copy(logFile.toPath(), unflushedLog.toPath());
+    buffer.flush();
+    Files.copy(unflushedLog.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+    CommentWriteBuffer restarted = open();
+    restarted.flush();
+
+    Assert.assertEquals(1, getCount("1"));
+  }
+}
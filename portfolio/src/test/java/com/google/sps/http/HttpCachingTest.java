@@ -0,0 +1,189 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.http;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class HttpCachingTest {
+  private static final String ETAG = "\"abc\"";
+  private static final String GZIP_ETAG = "\"abc-gzip\"";
+
+  /** A request with only the given headers. */
+  private static HttpServletRequest request(String... namesAndValues) {
+    Map<String, String> headers = new HashMap<String, String>();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      headers.put(namesAndValues[i], namesAndValues[i + 1]);
+    }
+    return (HttpServletRequest) Proxy.newProxyInstance(
+      HttpCachingTest.class.getClassLoader(),
+      new Class<?>[] {HttpServletRequest.class},
+      (proxy, method, args) -> method.getName().equals("getHeader") ? headers.get(args[0]) : null);
+  }
+
+  /** Records what is sent through an HttpServletResponse. */
+  private static final class RecordedResponse {
+    private final Map<String, String> headers = new HashMap<String, String>();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private int status = 200;
+
+    private final HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(
+      HttpCachingTest.class.getClassLoader(),
+      new Class<?>[] {HttpServletResponse.class},
+      (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "setHeader":
+            headers.put((String) args[0], (String) args[1]);
+            return null;
+          case "setStatus":
+            status = (int) args[0];
+            return null;
+          case "getOutputStream":
+            return new ServletOutputStream() {
+              @Override
+              public void write(int b) {
+                body.write(b);
+              }
+
+              @Override
+              public boolean isReady() {
+                return true;
+              }
+
+              @Override
+              public void setWriteListener(WriteListener listener) {}
+            };
+          default:
+            return null;
+        }
+      });
+  }
+
+  @Test
+  public void gzipETagHasItsOwnTag() {
+    Assert.assertEquals(GZIP_ETAG, HttpCaching.getGzipETag(ETAG));
+  }
+
+  @Test
+  public void weakETagIsTheSameForBothEncodings() {
+    String weakETag = HttpCaching.getWeakETag("version");
+
+    Assert.assertTrue(weakETag.startsWith("W/\""));
+    Assert.assertEquals(weakETag, HttpCaching.getGzipETag(weakETag));
+  }
+
+  @Test
+  public void withoutIfNoneMatchSetsETagAndSendsBody() {
+    RecordedResponse recorded = new RecordedResponse();
+
+    Assert.assertFalse(HttpCaching.checkNotModified(request(), recorded.response, ETAG));
+    Assert.assertEquals(ETAG, recorded.headers.get("ETag"));
+    Assert.assertEquals(200, recorded.status);
+  }
+
+  @Test
+  public void matchingIfNoneMatchSends304() {
+    RecordedResponse recorded = new RecordedResponse();
+
+    Assert.assertTrue(HttpCaching.checkNotModified(
+      request("If-None-Match", "\"other\", " + ETAG), recorded.response, ETAG));
+    Assert.assertEquals(304, recorded.status);
+  }
+
+  @Test
+  public void otherIfNoneMatchSendsBody() {
+    RecordedResponse recorded = new RecordedResponse();
+
+    Assert.assertFalse(HttpCaching.checkNotModified(request("If-None-Match", "\"other\""), recorded.response, ETAG));
+    Assert.assertEquals(200, recorded.status);
+  }
+
+  @Test
+  public void ifNoneMatchComparesWeakly() {
+    Assert.assertTrue(HttpCaching.checkNotModified(
+      request("If-None-Match", "W/" + ETAG), new RecordedResponse().response, ETAG));
+    Assert.assertTrue(HttpCaching.checkNotModified(
+      request("If-None-Match", ETAG), new RecordedResponse().response, "W/" + ETAG));
+    Assert.assertTrue(HttpCaching.checkNotModified(
+      request("If-None-Match", "*"), new RecordedResponse().response, ETAG));
+  }
+
+  @Test
+  public void eitherEncodingsETagMatches() {
+    Assert.assertTrue(HttpCaching.checkNotModified(
+      request("If-None-Match", GZIP_ETAG), new RecordedResponse().response, ETAG));
+    Assert.assertTrue(HttpCaching.checkNotModified(
+      request("If-None-Match", ETAG), new RecordedResponse().response, GZIP_ETAG));
+  }
+
+  @Test
+  public void acceptsGzipUnlessRefused() {
+    Assert.assertTrue(HttpCaching.acceptsGzip(request("Accept-Encoding", "deflate, gzip")));
+    Assert.assertTrue(HttpCaching.acceptsGzip(request("Accept-Encoding", "gzip;q=0.5")));
+    Assert.assertFalse(HttpCaching.acceptsGzip(request("Accept-Encoding", "gzip;q=0")));
+    Assert.assertFalse(HttpCaching.acceptsGzip(request("Accept-Encoding", "br")));
+    Assert.assertFalse(HttpCaching.acceptsGzip(request()));
+  }
+
+  @Test
+  public void writeJsonSendsGzipWithItsOwnETag() throws Exception {
+    CachedBody body = CachedBody.of("{\"a\":1}");
+    RecordedResponse recorded = new RecordedResponse();
+
+    HttpCaching.writeJson(request("Accept-Encoding", "gzip"), recorded.response, body);
+
+    Assert.assertEquals("gzip", recorded.headers.get("Content-Encoding"));
+    Assert.assertEquals(HttpCaching.getGzipETag(body.getETag()), recorded.headers.get("ETag"));
+    Assert.assertArrayEquals(body.getGzippedBytes(), recorded.body.toByteArray());
+  }
+
+  @Test
+  public void writeJsonSendsIdentityWithoutGzip() throws Exception {
+    CachedBody body = CachedBody.of("{\"a\":1}");
+    RecordedResponse recorded = new RecordedResponse();
+
+    HttpCaching.writeJson(request(), recorded.response, body);
+
+    Assert.assertNull(recorded.headers.get("Content-Encoding"));
+    Assert.assertEquals(body.getETag(), recorded.headers.get("ETag"));
+    Assert.assertArrayEquals(body.getBytes(), recorded.body.toByteArray());
+  }
+
+  @Test
+  public void writeJsonSends304WithoutBody() throws Exception {
+    CachedBody body = CachedBody.of("{\"a\":1}");
+    RecordedResponse recorded = new RecordedResponse();
+
+    HttpCaching.writeJson(
+      request("Accept-Encoding", "gzip", "If-None-Match", HttpCaching.getGzipETag(body.getETag())),
+      recorded.response,
+      body);
+
+    Assert.assertEquals(304, recorded.status);
+    Assert.assertEquals(0, recorded.body.size());
+  }
+}
@@ -0,0 +1,99 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.json;
+
+import com.google.gson.Gson;
+import com.google.sps.data.Comment;
+import com.google.sps.data.Project;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares serializing comments and projects with reflection (a plain Gson, as servlets used to build per request)
+ * against the shared Json.GSON with hand-written adapters.
+ * Run with: mvn -P benchmark test-compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+  /** Number of comments or projects serialized per operation. */
+  @Param({"10", "100"})
+  private int count;
+
+  private final Gson reflectiveGson = new Gson();
+  private List<Comment> comments;
+  private List<Project> projects;
+
+  @Setup
+  public void setUp() {
+    comments = new ArrayList<Comment>();
+    projects = new ArrayList<Project>();
+    for (int i = 0; i < count; i++) {
+      comments.add(new Comment(i, "This is comment number " + i + ", with some text.", true, "42", 1590000000000L + i, "user" + i));
+      projects.add(new Project(
+        i,
+        "Project " + i,
+        "A short description of project " + i + ".",
+        Arrays.asList("Personal", "JS", "Python"),
+        Arrays.asList("The first detail of this project.", "The second detail, a little longer than the first."),
+        Arrays.asList(new Project.ProjectLink("Github", "https://github.com/example/" + i))
+      ));
+    }
+  }
+
+  @Benchmark
+  public String commentsReflective() {
+    return reflectiveGson.toJson(comments);
+  }
+
+  @Benchmark
+  public String commentsAdapters() {
+    return Json.GSON.toJson(comments);
+  }
+
+  /** What servlets used to do: build a new Gson for every response. */
+  @Benchmark
+  public String commentsNewGsonPerCall() {
+    return new Gson().toJson(comments);
+  }
+
+  @Benchmark
+  public String projectsReflective() {
+    return reflectiveGson.toJson(projects);
+  }
+
+  @Benchmark
+  public String projectsAdapters() {
+    return Json.GSON.toJson(projects);
+  }
+}
@@ -0,0 +1,258 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.loadtest;
+
+import com.google.sps.metrics.LatencyHistogram;
+import com.google.sps.metrics.Metrics;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load tests /projects, /comments and /auth on a LocalPortfolio, reporting throughput and latency per endpoint.
+ * Run with: mvn -P loadtest test-compile exec:exec -Dloadtest.args="concurrency=32 translatorLatencyMs=100"
+ *
+ * Options, each name=value:
+ *   projects             number of projects seeded (20)
+ *   comments             comments seeded per project (100)
+ *   commentsCount        page size requested from /comments (15)
+ *   concurrency          clients sending requests back to back (16)
+ *   serverThreads        Jetty request threads (32)
+ *   translatorLatencyMs  latency of each fake Translate call (50)
+ *   warmupSeconds        time spent sending unmeasured requests first (5)
+ *   durationSeconds      time spent measuring (30)
+ *   printMetrics         whether to print the server's metrics afterwards, as /metrics would (true)
+ */
+public final class LoadRunner {
+  private static final Map<String, String> DEFAULT_OPTIONS = new HashMap<String, String>();
+  static {
+    DEFAULT_OPTIONS.put("projects", "20");
+    DEFAULT_OPTIONS.put("comments", "100");
+    DEFAULT_OPTIONS.put("commentsCount", "15");
+    DEFAULT_OPTIONS.put("concurrency", "16");
+    DEFAULT_OPTIONS.put("serverThreads", "32");
+    DEFAULT_OPTIONS.put("translatorLatencyMs", "50");
+    DEFAULT_OPTIONS.put("warmupSeconds", "5");
+    DEFAULT_OPTIONS.put("durationSeconds", "30");
+    DEFAULT_OPTIONS.put("printMetrics", "true");
+  }
+
+  /** Languages comments are requested in. English needs no translation, since seeded comments are english. */
+  private static final String[] LANGUAGES = {"en", "es", "fr", "zh", "hi"};
+
+  /** The requests clients send, in the proportions given by their weights. */
+  private enum Endpoint {
+    ALL_PROJECTS(20),
+    ONE_PROJECT(15),
+    COMMENTS(45),
+    AUTH(20);
+
+    private final int weight;
+    /** Latencies of successful requests, in microseconds. */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    Endpoint(int weight) {
+      this.weight = weight;
+    }
+  }
+
+  private final String baseUrl;
+  private final List<Long> projectIds;
+  private final int commentsCount;
+  /** Whether requests are being measured yet. */
+  private volatile boolean measuring = false;
+  private volatile boolean stopping = false;
+
+  private LoadRunner(String baseUrl, List<Long> projectIds, int commentsCount) {
+    this.baseUrl = baseUrl;
+    this.projectIds = projectIds;
+    this.commentsCount = commentsCount;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<String, String>(DEFAULT_OPTIONS);
+    for (String arg : args) {
+      String[] option = arg.split("=", 2);
+      if (option.length != 2 || !DEFAULT_OPTIONS.containsKey(option[0])) {
+        throw new IllegalArgumentException("Unknown option: " + arg + ". Options are " + DEFAULT_OPTIONS.keySet());
+      }
+      options.put(option[0], option[1]);
+    }
+    System.out.println("Options: " + options);
+
+    LocalPortfolio portfolio = new LocalPortfolio(
+      Long.parseLong(options.get("translatorLatencyMs")), Integer.parseInt(options.get("serverThreads")));
+    long seedStart = System.nanoTime();
+    List<Long> projectIds = portfolio.seed(
+      Integer.parseInt(options.get("projects")), Integer.parseInt(options.get("comments")));
+    System.out.printf("Seeded %d projects in %d ms%n",
+      projectIds.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seedStart));
+    String baseUrl = portfolio.start();
+
+    LoadRunner runner = new LoadRunner(baseUrl, projectIds, Integer.parseInt(options.get("commentsCount")));
+    try {
+      runner.run(
+        Integer.parseInt(options.get("concurrency")),
+        Long.parseLong(options.get("warmupSeconds")),
+        Long.parseLong(options.get("durationSeconds")));
+      if (Boolean.parseBoolean(options.get("printMetrics"))) {
+        /* /metrics is admins only, and the server runs in this process, so read its metrics directly. */
+        System.out.println();
+        PrintWriter metricsWriter = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        Metrics.writePrometheus(metricsWriter);
+        metricsWriter.flush();
+      }
+    } finally {
+      portfolio.stop();
+    }
+    /* The servlets' pools are daemon threads, but Jetty's selector may still be winding down. */
+    System.exit(0);
+  }
+
+  /** Send requests from every client for the warmup then the measured duration, then print the results. */
+  private void run(int concurrency, long warmupSeconds, long durationSeconds) throws InterruptedException {
+    ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+    for (int i = 0; i < concurrency; i++) {
+      long seed = i;
+      clients.execute(() -> sendRequests(new Random(seed)));
+    }
+
+    Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+    measuring = true;
+    long start = System.nanoTime();
+    Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+    measuring = false;
+    double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+    stopping = true;
+    clients.shutdown();
+    clients.awaitTermination(1, TimeUnit.MINUTES);
+
+    System.out.printf("%n%-14s %10s %8s %10s %10s %10s%n", "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms");
+    long totalRequests = 0;
+    for (Endpoint endpoint : Endpoint.values()) {
+      long requests = endpoint.latencies.getCount();
+      totalRequests += requests;
+      System.out.printf("%-14s %10d %8d %10.1f %10.2f %10.2f%n",
+        endpoint.name().toLowerCase(),
+        requests,
+        endpoint.errors.sum(),
+        requests / elapsedSeconds,
+        endpoint.latencies.getValueAtQuantile(0.5) / 1000.0,
+        endpoint.latencies.getValueAtQuantile(0.99) / 1000.0);
+    }
+    System.out.printf("%-14s %10d %8s %10.1f%n", "total", totalRequests, "", totalRequests / elapsedSeconds);
+  }
+
+  /** One client: send randomly chosen requests back to back until stopped. */
+  private void sendRequests(Random random) {
+    int totalWeight = 0;
+    for (Endpoint endpoint : Endpoint.values()) {
+      totalWeight += endpoint.weight;
+    }
+
+    while (!stopping) {
+      Endpoint endpoint = null;
+      int choice = random.nextInt(totalWeight);
+      for (Endpoint candidate : Endpoint.values()) {
+        choice -= candidate.weight;
+        if (choice < 0) {
+          endpoint = candidate;
+          break;
+        }
+      }
+
+      long start = System.nanoTime();
+      boolean ok;
+      try {
+        Response response = get(getPath(endpoint, random));
+        /* /auth answers 401 with a login url, since clients aren't logged in. */
+        ok = response.status < 400 || (endpoint == Endpoint.AUTH && response.status == 401);
+      } catch (IOException requestFailed) {
+        ok = false;
+      }
+      long micros = (System.nanoTime() - start) / 1000;
+
+      if (measuring) {
+        if (ok) {
+          endpoint.latencies.record(micros);
+        } else {
+          endpoint.errors.increment();
+        }
+      }
+    }
+  }
+
+  private String getPath(Endpoint endpoint, Random random) throws IOException {
+    long projectId = projectIds.get(random.nextInt(projectIds.size()));
+    switch (endpoint) {
+      case ALL_PROJECTS:
+        return "/projects";
+      case ONE_PROJECT:
+        return "/projects?projectId=" + projectId;
+      case COMMENTS:
+        return "/comments?projectId=" + projectId
+          + "&commentsCount=" + commentsCount
+          + "&languageCode=" + LANGUAGES[random.nextInt(LANGUAGES.length)];
+      case AUTH:
+        return "/auth?redirectUrl="
+          + URLEncoder.encode(baseUrl + "/project-detail.html?projectId=" + projectId, "UTF-8");
+      default:
+        throw new IllegalArgumentException("Unknown endpoint: " + endpoint);
+    }
+  }
+
+  private static final class Response {
+    private final int status;
+    private final byte[] body;
+
+    Response(int status, byte[] body) {
+      this.status = status;
+      this.body = body;
+    }
+  }
+
+  /** Send a GET and read the whole body, so the connection can be kept alive for the next request. */
+  private Response get(String path) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+    int status = connection.getResponseCode();
+    InputStream bodyStream = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    if (bodyStream != null) {
+      try (InputStream in = bodyStream) {
+        byte[] buffer = new byte[8192];
+        for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+          body.write(buffer, 0, read);
+        }
+      }
+    }
+    return new Response(status, body.toByteArray());
+  }
+}
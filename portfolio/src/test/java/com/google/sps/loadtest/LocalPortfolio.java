@@ -0,0 +1,149 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.loadtest;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.EmbeddedEntity;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalUserServiceTestConfig;
+import com.google.apphosting.api.ApiProxy;
+import com.google.sps.comments.CommentCounter;
+import com.google.sps.metrics.MetricsFilter;
+import com.google.sps.servlets.AuthServlet;
+import com.google.sps.servlets.BootstrapServlet;
+import com.google.sps.servlets.CommentsServlet;
+import com.google.sps.servlets.MetricsServlet;
+import com.google.sps.servlets.ProjectsServlet;
+import com.google.sps.translation.Translators;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServlet;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * The portfolio's servlets running in an embedded Jetty, against in-memory App Engine services
+ * and a FakeTranslator, so they can be load tested on any machine without a Cloud project.
+ */
+final class LocalPortfolio {
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+    new LocalDatastoreServiceTestConfig().setNoStorage(true),
+    new LocalUserServiceTestConfig());
+  private final Server server;
+
+  /**
+   * @param translatorLatencyMs simulated latency of each Translate call.
+   * @param threads             size of Jetty's request thread pool.
+   */
+  LocalPortfolio(long translatorLatencyMs, int threads) {
+    System.setProperty(Translators.TRANSLATOR_PROPERTY, "fake");
+    System.setProperty(Translators.FAKE_LATENCY_MS_PROPERTY, String.valueOf(translatorLatencyMs));
+
+    helper.setUp();
+    /*
+     * API calls need an environment on the calling thread. The helper only sets one on this thread,
+     * so give the same one to Jetty's threads and the servlets' own pools as they first make calls.
+     */
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+    ApiProxy.setEnvironmentFactory(() -> environment);
+
+    server = new Server(new QueuedThreadPool(threads));
+    ServerConnector connector = new ServerConnector(server);
+    connector.setPort(0);
+    server.addConnector(connector);
+
+    ServletContextHandler context = new ServletContextHandler();
+    addServlet(context, new AuthServlet(), "/auth", 1);
+    addServlet(context, new CommentsServlet(), "/comments", 1);
+    addServlet(context, new ProjectsServlet(), "/projects", 2);
+    addServlet(context, new BootstrapServlet(), "/bootstrap", 2);
+    addServlet(context, new MetricsServlet(), "/metrics", 2);
+    FilterHolder metricsFilter = new FilterHolder(new MetricsFilter());
+    metricsFilter.setAsyncSupported(true);
+    for (String path : Arrays.asList("/auth", "/bootstrap", "/comments", "/projects")) {
+      context.addFilter(metricsFilter, path, EnumSet.of(DispatcherType.REQUEST));
+    }
+    server.setHandler(context);
+  }
+
+  /** Register a servlet as its @WebServlet annotation would, since Jetty isn't scanning for them here. */
+  private static void addServlet(ServletContextHandler context, HttpServlet servlet, String path, int initOrder) {
+    ServletHolder holder = new ServletHolder(servlet);
+    holder.setAsyncSupported(true);
+    /* Servlets that others look up from the context must start first. */
+    holder.setInitOrder(initOrder);
+    context.addServlet(holder, path);
+  }
+
+  /** Write N projects, each with M comments, straight to datastore, along with their comment counters. */
+  List<Long> seed(int projectCount, int commentsPerProject) {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    ArrayList<Long> projectIds = new ArrayList<Long>();
+    long timestamp = System.currentTimeMillis() - (long) projectCount * commentsPerProject;
+
+    for (int p = 0; p < projectCount; p++) {
+      Entity project = new Entity("Project");
+      project.setProperty("name", "Project " + p);
+      project.setProperty("description", "A load test project about topic " + p + ".");
+      project.setProperty("tags", Arrays.asList("tag" + (p % 5), "tag" + (p % 7)));
+      project.setUnindexedProperty("details", Arrays.asList("First detail of " + p, "Second detail of " + p));
+      EmbeddedEntity link = new EmbeddedEntity();
+      link.setUnindexedProperty("name", "Github");
+      link.setUnindexedProperty("href", "https://github.com/example/project-" + p);
+      project.setUnindexedProperty("links", Arrays.asList(link));
+      long projectId = datastore.put(project).getId();
+      projectIds.add(projectId);
+
+      ArrayList<Entity> comments = new ArrayList<Entity>(commentsPerProject);
+      for (int c = 0; c < commentsPerProject; c++) {
+        Entity comment = new Entity("Comment");
+        comment.setProperty("message", "Comment " + c + " on project " + p + ", long enough to look like a real one.");
+        comment.setProperty("projectId", String.valueOf(projectId));
+        comment.setProperty("timestamp", timestamp++);
+        comment.setProperty("email", "user" + (c % 50) + "@example.com");
+        comment.setProperty("displayName", "User " + (c % 50));
+        comment.setProperty("languageCode", "en");
+        comments.add(comment);
+      }
+      /* The same limit on batch size as real datastore. */
+      for (int start = 0; start < comments.size(); start += 500) {
+        datastore.put(comments.subList(start, Math.min(start + 500, comments.size())));
+      }
+      CommentCounter.recount(String.valueOf(projectId));
+    }
+    return projectIds;
+  }
+
+  /** Start serving, returning the base url, e.g. http://localhost:12345 */
+  String start() throws Exception {
+    server.start();
+    return "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+  }
+
+  void stop() throws Exception {
+    server.stop();
+    helper.tearDown();
+  }
+}
@@ -0,0 +1,108 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class LatencyHistogramTest {
+
+  @Test
+  public void emptyHistogramReportsZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    Assert.assertEquals(0, histogram.getCount());
+    Assert.assertEquals(0, histogram.getSum());
+    Assert.assertEquals(0, histogram.getValueAtQuantile(0.5));
+  }
+
+  @Test
+  public void countsAndSumsValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    histogram.record(10);
+    histogram.record(1000);
+    histogram.record(123456);
+
+    Assert.assertEquals(3, histogram.getCount());
+    Assert.assertEquals(10 + 1000 + 123456, histogram.getSum());
+  }
+
+  @Test
+  public void smallValuesAreExact() {
+    for (long value = 0; value < 32; value++) {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(value);
+
+      Assert.assertEquals(value, histogram.getValueAtQuantile(1));
+    }
+  }
+
+  @Test
+  public void largerValuesAreWithinAboutThreePercent() {
+    /* Bucket edges, and values either side of them, over many powers of two. */
+    long[] values = {32, 33, 63, 64, 65, 100, 1000, 1023, 1024, 1025, 65535, 1000000, 123456789, 1L << 40};
+    for (long value : values) {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(value);
+
+      /* The highest value in its bucket, which is under 1/32 of the value wide. */
+      long reported = histogram.getValueAtQuantile(1);
+      Assert.assertTrue("reported " + reported + " for " + value, reported >= value);
+      Assert.assertTrue("reported " + reported + " for " + value, reported - value < value / 32.0);
+    }
+  }
+
+  @Test
+  public void neighbouringValuesShareABucket() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    /* 64 and 65 fall in the same two-wide bucket, so report the same value. */
+    histogram.record(64);
+    Assert.assertEquals(65, histogram.getValueAtQuantile(1));
+    histogram.record(65);
+    Assert.assertEquals(65, histogram.getValueAtQuantile(0));
+    histogram.record(66);
+    Assert.assertEquals(67, histogram.getValueAtQuantile(1));
+  }
+
+  @Test
+  public void negativeValuesAreRecordedAsZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    histogram.record(-5);
+
+    Assert.assertEquals(1, histogram.getCount());
+    Assert.assertEquals(0, histogram.getSum());
+    Assert.assertEquals(0, histogram.getValueAtQuantile(1));
+  }
+
+  @Test
+  public void quantilesPickTheValueAtTheirRank() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 20; value++) {
+      histogram.record(value);
+    }
+
+    Assert.assertEquals(1, histogram.getValueAtQuantile(0));
+    Assert.assertEquals(10, histogram.getValueAtQuantile(0.5));
+    Assert.assertEquals(19, histogram.getValueAtQuantile(0.95));
+    Assert.assertEquals(20, histogram.getValueAtQuantile(1));
+  }
+}
@@ -0,0 +1,105 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.projects;
+
+import com.google.sps.data.Project;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ProjectSearchIndexTest {
+
+  private static Project project(long id, String name, String description, String... details) {
+    return new Project(id, name, description, null, Arrays.asList(details), null);
+  }
+
+  @Test
+  public void tokenizeSplitsOnNonWordCharactersAndLowercases() {
+    Assert.assertEquals(
+      Arrays.asList("hello", "world", "2020", "c"), ProjectSearchIndex.tokenize("Hello, WORLD! 2020 (c)"));
+  }
+
+  @Test
+  public void emptyQueryMatchesNothing() {
+    ProjectSearchIndex index = new ProjectSearchIndex(Arrays.asList(project(1, "Anything", "")));
+
+    Assert.assertEquals(Collections.emptyList(), index.search("  !? ", 10));
+  }
+
+  @Test
+  public void queryWordMatchesWordsItPrefixes() {
+    Project javaProject = project(1, "Java server", "");
+    Project pythonProject = project(2, "Python scripts", "");
+    ProjectSearchIndex index = new ProjectSearchIndex(Arrays.asList(javaProject, pythonProject));
+
+    Assert.assertEquals(Arrays.asList(javaProject), index.search("JAV", 10));
+    Assert.assertEquals(Collections.emptyList(), index.search("avascript", 10));
+  }
+
+  @Test
+  public void nameOutranksDescriptionOutranksDetails() {
+    Project inDetails = project(1, "One", "Something else", "About search engines");
+    Project inDescription = project(2, "Two", "About search engines");
+    Project inName = project(3, "Search engines", "Something else");
+    ProjectSearchIndex index = new ProjectSearchIndex(Arrays.asList(inDetails, inDescription, inName));
+
+    Assert.assertEquals(Arrays.asList(inName, inDescription, inDetails), index.search("search", 10));
+  }
+
+  @Test
+  public void matchingMoreQueryWordsRanksHigher() {
+    Project oneWord = project(1, "Weather", "");
+    Project bothWords = project(2, "Weather station", "");
+    ProjectSearchIndex index = new ProjectSearchIndex(Arrays.asList(oneWord, bothWords));
+
+    Assert.assertEquals(Arrays.asList(bothWords, oneWord), index.search("weather station", 10));
+  }
+
+  @Test
+  public void rareWordsCountForMoreThanCommonOnes() {
+    Project common = project(1, "Game", "");
+    Project rare = project(2, "Compiler", "");
+    Project alsoCommon = project(3, "Game", "");
+    ProjectSearchIndex index = new ProjectSearchIndex(Arrays.asList(common, rare, alsoCommon));
+
+    List<Project> actual = index.search("game compiler", 10);
+
+    Assert.assertEquals(rare, actual.get(0));
+  }
+
+  @Test
+  public void tiesKeepCatalogOrder() {
+    Project first = project(1, "Chess", "");
+    Project second = project(2, "Chess", "");
+    ProjectSearchIndex index = new ProjectSearchIndex(Arrays.asList(first, second));
+
+    Assert.assertEquals(Arrays.asList(first, second), index.search("chess", 10));
+  }
+
+  @Test
+  public void returnsAtMostLimit() {
+    Project first = project(1, "Chess", "");
+    Project second = project(2, "Chess", "");
+    ProjectSearchIndex index = new ProjectSearchIndex(Arrays.asList(first, second));
+
+    Assert.assertEquals(Arrays.asList(first), index.search("chess", 1));
+    Assert.assertEquals(Collections.emptyList(), index.search("chess", 0));
+  }
+}
@@ -0,0 +1,83 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.projects;
+
+import com.google.sps.data.Project;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class TagIndexTest {
+  private static final Project JAVA_WEB = project(1, "Java", "Web");
+  private static final Project PYTHON_WEB = project(2, "Python", "web");
+  private static final Project JAVA_CLI = project(3, "Java", "CLI", "java");
+  private static final Project UNTAGGED = new Project(4, "Untagged", "", null, null, null);
+
+  private static final List<Project> PROJECTS = Arrays.asList(JAVA_WEB, PYTHON_WEB, JAVA_CLI, UNTAGGED);
+
+  private final TagIndex index = new TagIndex(PROJECTS);
+
+  private static Project project(long id, String... tags) {
+    return new Project(id, "Project " + id, "", Arrays.asList(tags), null, null);
+  }
+
+  @Test
+  public void noTagsMatchesEverything() {
+    Assert.assertEquals(PROJECTS, index.matchAll(Collections.<String>emptyList()));
+    Assert.assertEquals(PROJECTS, index.matchAny(Collections.<String>emptyList()));
+  }
+
+  @Test
+  public void oneTag() {
+    Assert.assertEquals(Arrays.asList(JAVA_WEB, JAVA_CLI), index.matchAll(Arrays.asList("Java")));
+    Assert.assertEquals(Arrays.asList(JAVA_WEB, JAVA_CLI), index.matchAny(Arrays.asList("Java")));
+  }
+
+  @Test
+  public void tagsIgnoreCase() {
+    Assert.assertEquals(Arrays.asList(JAVA_WEB, PYTHON_WEB), index.matchAll(Arrays.asList("WEB")));
+  }
+
+  @Test
+  public void duplicateTagOnProjectIsListedOnce() {
+    Assert.assertEquals(Arrays.asList(JAVA_CLI), index.matchAll(Arrays.asList("cli", "java")));
+  }
+
+  @Test
+  public void matchAllIntersects() {
+    Assert.assertEquals(Arrays.asList(JAVA_WEB), index.matchAll(Arrays.asList("web", "java")));
+  }
+
+  @Test
+  public void matchAllWithUnknownTagMatchesNothing() {
+    Assert.assertEquals(Collections.emptyList(), index.matchAll(Arrays.asList("java", "rust")));
+  }
+
+  @Test
+  public void matchAnyUnitesInCatalogOrder() {
+    Assert.assertEquals(
+      Arrays.asList(JAVA_WEB, PYTHON_WEB, JAVA_CLI), index.matchAny(Arrays.asList("cli", "python", "web")));
+  }
+
+  @Test
+  public void matchAnyWithUnknownTagIgnoresIt() {
+    Assert.assertEquals(Arrays.asList(PYTHON_WEB), index.matchAny(Arrays.asList("rust", "python")));
+  }
+}
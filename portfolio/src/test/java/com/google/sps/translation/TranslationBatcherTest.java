@@ -0,0 +1,90 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.translation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class TranslationBatcherTest {
+
+  @Test
+  public void noTexts() {
+    TranslationBatcher batcher = new TranslationBatcher(2, 100);
+
+    Assert.assertEquals(Collections.emptyList(), batcher.partition(Collections.<String>emptyList()));
+  }
+
+  @Test
+  public void everythingFitsInOneBatch() {
+    TranslationBatcher batcher = new TranslationBatcher(3, 100);
+
+    List<List<Integer>> actual = batcher.partition(Arrays.asList("a", "b", "c"));
+
+    Assert.assertEquals(Arrays.asList(Arrays.asList(0, 1, 2)), actual);
+  }
+
+  @Test
+  public void splitsByCount() {
+    TranslationBatcher batcher = new TranslationBatcher(2, 100);
+
+    List<List<Integer>> actual = batcher.partition(Arrays.asList("a", "b", "c", "d", "e"));
+
+    Assert.assertEquals(Arrays.asList(Arrays.asList(0, 1), Arrays.asList(2, 3), Arrays.asList(4)), actual);
+  }
+
+  @Test
+  public void splitsByBytes() {
+    TranslationBatcher batcher = new TranslationBatcher(10, 5);
+
+    /* 3 + 2 bytes fill a batch exactly; another byte needs a new one. */
+    List<List<Integer>> actual = batcher.partition(Arrays.asList("aaa", "bb", "c", "dddd"));
+
+    Assert.assertEquals(Arrays.asList(Arrays.asList(0, 1), Arrays.asList(2, 3)), actual);
+  }
+
+  @Test
+  public void countsUtf8BytesNotCharacters() {
+    TranslationBatcher batcher = new TranslationBatcher(10, 4);
+
+    /* Each of these characters is 2 bytes in UTF-8, so only two fit. */
+    List<List<Integer>> actual = batcher.partition(Arrays.asList("é", "é", "é"));
+
+    Assert.assertEquals(Arrays.asList(Arrays.asList(0, 1), Arrays.asList(2)), actual);
+  }
+
+  @Test
+  public void oversizedTextGetsItsOwnBatch() {
+    TranslationBatcher batcher = new TranslationBatcher(10, 5);
+
+    List<List<Integer>> actual = batcher.partition(Arrays.asList("a", "much too long", "b"));
+
+    Assert.assertEquals(Arrays.asList(Arrays.asList(0), Arrays.asList(1), Arrays.asList(2)), actual);
+  }
+
+  @Test
+  public void nullTextsTakeNoBytes() {
+    TranslationBatcher batcher = new TranslationBatcher(10, 1);
+
+    List<List<Integer>> actual = batcher.partition(Arrays.asList("a", null, null));
+
+    Assert.assertEquals(Arrays.asList(Arrays.asList(0, 1, 2)), actual);
+  }
+}
@@ -26,6 +26,15 @@ import javax.servlet.http.HttpServletResponse;
 @WebServlet("/translate")
 public class TranslationServlet extends HttpServlet {
 
+  // Translate services are thread-safe, so build one and share it between requests
+  // instead of re-reading credentials and setting up a new connection every time.
+  private Translate translate;
+
+  @Override
+  public void init() {
+    translate = TranslateOptions.getDefaultInstance().getService();
+  }
+
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     // Get the request parameters.
@@ -33,7 +42,6 @@ public class TranslationServlet extends HttpServlet {
     String languageCode = request.getParameter("languageCode");
 
     // Do the translation.
-    Translate translate = TranslateOptions.getDefaultInstance().getService();
     Translation translation =
         translate.translate(originalText, Translate.TranslateOption.targetLanguage(languageCode));
     String translatedText = translation.getTranslatedText();
@@ -0,0 +1,117 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures FindMeetingQuery.query against synthetic calendars of different sizes and shapes.
+ * Run with: mvn -P benchmark test-compile exec:exec -Djmh.args="FindMeetingQueryBenchmark -prof gc"
+ * where -prof gc adds the allocation rate and bytes allocated per query to the results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindMeetingQueryBenchmark {
+  /** Everyone who attends events or is requested, so requested attendees are busy in some of the events. */
+  private static final int PEOPLE = 50;
+  /** Events start and last a multiple of this many minutes, like most real calendars. */
+  private static final int SLOT_MINUTES = 15;
+  /** The longest event, in minutes. */
+  private static final int MAX_EVENT_MINUTES = 2 * 60;
+  private static final int MEETING_MINUTES = 30;
+  /** The calendars are random but the same every run, so results can be compared between runs. */
+  private static final long SEED = 42;
+
+  /** Number of events in the calendar. */
+  @Param({"10", "100", "1000"})
+  private int eventCount;
+
+  /** Number of people attending each event. */
+  @Param({"2", "10"})
+  private int attendeesPerEvent;
+
+  /** Number of mandatory attendees in the request. */
+  @Param({"1", "5"})
+  private int requestAttendees;
+
+  /** Number of optional attendees in the request, besides the mandatory ones. */
+  @Param({"0", "3"})
+  private int optionalAttendees;
+
+  private final FindMeetingQuery query = new FindMeetingQuery();
+  private List<Event> events;
+  private MeetingRequest request;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(SEED);
+    List<String> people = new ArrayList<String>();
+    for (int i = 0; i < PEOPLE; i++) {
+      people.add("Person " + i);
+    }
+
+    events = new ArrayList<Event>();
+    for (int i = 0; i < eventCount; i++) {
+      int duration = SLOT_MINUTES * (1 + random.nextInt(MAX_EVENT_MINUTES / SLOT_MINUTES));
+      int start = SLOT_MINUTES * random.nextInt((TimeRange.WHOLE_DAY.duration() - duration) / SLOT_MINUTES + 1);
+      events.add(new Event(
+        "Event " + i,
+        TimeRange.fromStartDuration(start, duration),
+        pickPeople(people, attendeesPerEvent, random)));
+    }
+
+    /* Pick mandatory and optional attendees together, so nobody is both. */
+    List<String> requested = new ArrayList<String>(pickPeople(people, requestAttendees + optionalAttendees, random));
+    request = new MeetingRequest(requested.subList(0, requestAttendees), MEETING_MINUTES);
+    for (String optional : requested.subList(requestAttendees, requested.size())) {
+      request.addOptionalAttendee(optional);
+    }
+  }
+
+  /** A random set of count different people. */
+  private static Set<String> pickPeople(List<String> people, int count, Random random) {
+    Set<String> picked = new HashSet<String>();
+    while (picked.size() < count) {
+      picked.add(people.get(random.nextInt(people.size())));
+    }
+    return picked;
+  }
+
+  @Benchmark
+  public Collection<TimeRange> query() {
+    return query.query(events, request);
+  }
+}